@@ -0,0 +1,69 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.awt.GridBagLayout;
+import java.io.Serial;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+import org.openstreetmap.josm.data.osm.search.SearchCompiler;
+import org.openstreetmap.josm.data.osm.search.SearchParseError;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.layer.AbstractOsmDataLayer;
+import org.openstreetmap.josm.tools.GBC;
+
+/**
+ * A panel to choose which objects of each data layer are added to the todo list.
+ */
+class TodoAddLayersPanel extends JPanel {
+    @Serial
+    private static final long serialVersionUID = 2150950880519311512L;
+
+    private final transient Map<AbstractOsmDataLayer, JComboBox<TodoAddLayersTask.Filter>> filters = new LinkedHashMap<>();
+    private final JTextField search = new JTextField(30);
+
+    /**
+     * Create a new panel for the current data layers
+     */
+    TodoAddLayersPanel() {
+        super(new GridBagLayout());
+        for (var layer : MainApplication.getLayerManager().getLayersOfType(AbstractOsmDataLayer.class)) {
+            final var filter = new JComboBox<>(TodoAddLayersTask.Filter.values());
+            filter.setSelectedItem(TodoAddLayersTask.Filter.SELECTED);
+            filters.put(layer, filter);
+            add(new JLabel(layer.getName()), GBC.std().insets(0, 0, 5, 5));
+            add(filter, GBC.eol().fill(GBC.HORIZONTAL).insets(0, 0, 0, 5));
+        }
+        search.setToolTipText(tr("The search expression for the layers that add the objects matching the search"));
+        add(new JLabel(tr("Search:")), GBC.std().insets(0, 0, 5, 0));
+        add(search, GBC.eol().fill(GBC.HORIZONTAL));
+    }
+
+    /**
+     * Create the task that adds the chosen objects
+     * @param model The model to add the items to
+     * @return The task, or {@code null} if the search expression is invalid
+     */
+    TodoAddLayersTask createTask(TodoListModel model) {
+        final var chosen = new LinkedHashMap<AbstractOsmDataLayer, TodoAddLayersTask.Filter>();
+        filters.forEach((layer, filter) -> chosen.put(layer, (TodoAddLayersTask.Filter) filter.getSelectedItem()));
+        if (chosen.containsValue(TodoAddLayersTask.Filter.SEARCH)) {
+            try {
+                SearchCompiler.compile(search.getText());
+            } catch (SearchParseError e) {
+                JOptionPane.showMessageDialog(MainApplication.getMainFrame(), e.getMessage(), tr("Invalid search expression"),
+                        JOptionPane.ERROR_MESSAGE);
+                return null;
+            }
+        }
+        return new TodoAddLayersTask(model, chosen, search.getText());
+    }
+}
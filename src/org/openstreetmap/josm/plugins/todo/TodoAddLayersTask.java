@@ -0,0 +1,135 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.openstreetmap.josm.tools.I18n.marktr;
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.search.SearchCompiler;
+import org.openstreetmap.josm.data.osm.search.SearchParseError;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.PleaseWaitRunnable;
+import org.openstreetmap.josm.gui.layer.AbstractOsmDataLayer;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+
+/**
+ * Collects objects from several layers and adds them to the todo list.
+ * <p>
+ * The layers are read in parallel, each under the read lock of its data set, and the items of all layers are added
+ * in layer order with a single change of the model.
+ */
+class TodoAddLayersTask extends PleaseWaitRunnable {
+    /**
+     * The objects of a layer that are added
+     */
+    enum Filter {
+        /** The layer is skipped */
+        NONE(marktr("Nothing")),
+        /** The selected objects */
+        SELECTED(marktr("Selected objects")),
+        /** The modified objects */
+        MODIFIED(marktr("Modified objects")),
+        /** The objects that match the search expression */
+        SEARCH(marktr("Objects matching the search"));
+
+        private final String name;
+
+        Filter(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return tr(name);
+        }
+    }
+
+    private final TodoListModel model;
+    private final Map<AbstractOsmDataLayer, Filter> filters;
+    private final String search;
+    private final List<TodoListItem> items = new ArrayList<>();
+    private volatile boolean canceled;
+
+    /**
+     * Create a new task
+     * @param model The model to add the items to
+     * @param filters The filter for each layer, in layer order
+     * @param search The search expression for {@link Filter#SEARCH}, it must be valid if that filter is used
+     */
+    TodoAddLayersTask(TodoListModel model, Map<AbstractOsmDataLayer, Filter> filters, String search) {
+        super(tr("Adding objects from all layers to the todo list"), false);
+        this.model = model;
+        this.filters = filters;
+        this.search = search;
+    }
+
+    @Override
+    protected void cancel() {
+        canceled = true;
+    }
+
+    @Override
+    protected void realRun() {
+        try (var timer = TodoMetrics.time("addLayers")) {
+            final var collected = filters.entrySet().parallelStream()
+                    .filter(entry -> entry.getValue() != Filter.NONE)
+                    .map(entry -> collect(entry.getKey(), entry.getValue()))
+                    .toList();
+            collected.forEach(items::addAll);
+            timer.items(items.size());
+        }
+    }
+
+    private List<TodoListItem> collect(AbstractOsmDataLayer layer, Filter filter) {
+        final SearchCompiler.Match match;
+        try {
+            // Every layer gets its own matcher, the matchers are not meant to be shared between threads
+            match = filter == Filter.SEARCH ? SearchCompiler.compile(search) : null;
+        } catch (SearchParseError e) {
+            throw new IllegalArgumentException(e);
+        }
+        final var dataSet = layer.getDataSet();
+        final var result = new ArrayList<TodoListItem>();
+        final var lock = dataSet.getReadLock();
+        lock.lock();
+        try {
+            final var candidates = filter == Filter.SELECTED ? dataSet.getAllSelected() : dataSet.allNonDeletedPrimitives();
+            for (IPrimitive primitive : candidates) {
+                if (canceled)
+                    break;
+                if (!primitive.isDeleted() && accept(filter, match, primitive))
+                    result.add(new TodoListItem(layer, primitive));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    private static boolean accept(Filter filter, SearchCompiler.Match match, IPrimitive primitive) {
+        return switch (filter) {
+            case SELECTED -> true;
+            case MODIFIED -> primitive.isModified();
+            case SEARCH -> primitive instanceof OsmPrimitive osmPrimitive ? match.match(osmPrimitive) : match.match(primitive);
+            default -> false;
+        };
+    }
+
+    @Override
+    protected void finish() {
+        if (canceled || items.isEmpty())
+            return;
+        GuiHelper.runInEDT(() -> {
+            // Layers may have been removed while the objects were collected
+            final var layers = filters.keySet().stream().filter(MainApplication.getLayerManager()::containsLayer).collect(Collectors.toSet());
+            final var existing = items.stream().filter(item -> layers.contains(item.layer())).toList();
+            model.batch(() -> model.addItems(model.withoutReviewed(existing)));
+        });
+    }
+}
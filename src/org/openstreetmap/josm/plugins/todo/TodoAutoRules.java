@@ -0,0 +1,66 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.util.List;
+
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.TagsChangedEvent;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.data.preferences.ListProperty;
+
+/**
+ * The rules that change the state of todo items when their primitives are changed in the data set.
+ * <p>
+ * The rules only look at a single change of a single primitive, so they can be evaluated for the changed primitives
+ * without looking at the rest of the list.
+ */
+final class TodoAutoRules {
+    /** Mark items as done when their primitive is modified */
+    static final BooleanProperty MARK_MODIFIED = new BooleanProperty("todo.auto.mark-modified", false);
+    /** Mark items as done when one of these keys is added to their primitive */
+    static final ListProperty MARK_TAGS = new ListProperty("todo.auto.mark-tags", List.of());
+    /** Move done items back to the todo list when their primitive is changed again */
+    static final BooleanProperty REOPEN_EDITED = new BooleanProperty("todo.auto.reopen-edited", false);
+
+    private TodoAutoRules() {
+        // Hide the default constructor
+    }
+
+    /**
+     * Check if any rule is enabled
+     * @return {@code true} if the changes need to be evaluated
+     */
+    static boolean isEnabled() {
+        return MARK_MODIFIED.get() || REOPEN_EDITED.get() || !MARK_TAGS.get().isEmpty();
+    }
+
+    /**
+     * Check if a change marks the items of a primitive as done
+     * @param event The change
+     * @param primitive The changed primitive
+     * @return {@code true} if todo items of the primitive should be marked
+     */
+    static boolean marks(AbstractDatasetChangedEvent event, OsmPrimitive primitive) {
+        if (MARK_MODIFIED.get() && primitive.isModified()) {
+            return true;
+        }
+        final var keys = MARK_TAGS.get();
+        if (!keys.isEmpty() && event instanceof TagsChangedEvent tagsChangedEvent) {
+            final var originalKeys = tagsChangedEvent.getOriginalKeys();
+            return keys.stream().anyMatch(key -> primitive.hasKey(key) && !originalKeys.containsKey(key));
+        }
+        return false;
+    }
+
+    /**
+     * Check if a change moves the done items of a primitive back to the todo list. A change that would mark the items
+     * does not move them back, otherwise the items would flip between the lists on every edit.
+     * @param event The change
+     * @param primitive The changed primitive
+     * @return {@code true} if done items of the primitive should be moved back
+     */
+    static boolean reopens(AbstractDatasetChangedEvent event, OsmPrimitive primitive) {
+        return REOPEN_EDITED.get() && !marks(event, primitive);
+    }
+}
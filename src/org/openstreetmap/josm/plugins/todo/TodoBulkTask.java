@@ -0,0 +1,81 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
+import org.openstreetmap.josm.gui.PleaseWaitRunnable;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+
+/**
+ * Applies a change of all items to a large todo list in chunks, with progress and cancellation.
+ * <p>
+ * Every chunk is applied in the event dispatch thread, so the model is only changed there, and other events are
+ * handled between the chunks. A cancelled change keeps the chunks that were applied, and can be undone like a
+ * completed one. A change of the model between two chunks stops the change the same way, see
+ * {@link TodoListCore.BulkChange}.
+ */
+class TodoBulkTask extends PleaseWaitRunnable {
+    /** The number of items changed in one step of the event dispatch thread, lists up to this size are changed at once */
+    static final IntegerProperty CHUNK_SIZE = new IntegerProperty("todo.bulk.chunk-size", 20_000);
+
+    private final TodoListCore.BulkChange change;
+    private final Runnable whenDone;
+    private volatile boolean canceled;
+
+    /**
+     * Create a new task
+     * @param title The title of the progress dialog
+     * @param change The change to apply
+     */
+    TodoBulkTask(String title, TodoListCore.BulkChange change) {
+        this(title, change, null);
+    }
+
+    /**
+     * Create a new task
+     * @param title The title of the progress dialog
+     * @param change The change to apply
+     * @param whenDone Called in the event dispatch thread after the change was finished, may be {@code null}
+     */
+    TodoBulkTask(String title, TodoListCore.BulkChange change, Runnable whenDone) {
+        super(title, false);
+        this.change = change;
+        this.whenDone = whenDone;
+    }
+
+    /**
+     * Check if a number of items is changed in chunks
+     * @param count The number of items
+     * @return {@code true} if the change should use this task
+     */
+    static boolean isChunked(int count) {
+        return count > CHUNK_SIZE.get();
+    }
+
+    @Override
+    protected void cancel() {
+        canceled = true;
+    }
+
+    @Override
+    protected void realRun() {
+        final var monitor = getProgressMonitor();
+        monitor.setTicksCount(change.getTotal());
+        final var chunk = Math.max(1, CHUNK_SIZE.get());
+        final var more = new AtomicBoolean(true);
+        while (more.get() && !canceled) {
+            GuiHelper.runInEDTAndWait(() -> more.set(change.step(chunk)));
+            monitor.setTicks(change.getChanged());
+        }
+    }
+
+    @Override
+    protected void finish() {
+        GuiHelper.runInEDT(() -> {
+            change.finish();
+            if (whenDone != null)
+                whenDone.run();
+        });
+    }
+}
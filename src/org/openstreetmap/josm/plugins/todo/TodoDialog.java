@@ -3,6 +3,7 @@ package org.openstreetmap.josm.plugins.todo;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
+import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
@@ -10,22 +11,35 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.IOException;
 import java.io.Serial;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import javax.swing.Action;
+import javax.swing.DefaultComboBoxModel;
 import javax.swing.DefaultListSelectionModel;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
 import javax.swing.JList;
+import javax.swing.JMenu;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
 import javax.swing.event.ListSelectionEvent;
@@ -34,7 +48,8 @@ import javax.swing.event.ListSelectionListener;
 import org.openstreetmap.josm.actions.AutoScaleAction;
 import org.openstreetmap.josm.actions.AutoScaleAction.AutoScaleMode;
 import org.openstreetmap.josm.actions.JosmAction;
-import org.openstreetmap.josm.data.osm.DataSelectionListener;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.BBox;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.IPrimitive;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
@@ -42,6 +57,10 @@ import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.event.DatasetEventManager;
 import org.openstreetmap.josm.data.osm.event.DatasetEventManager.FireMode;
 import org.openstreetmap.josm.data.osm.event.SelectionEventManager;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
+import org.openstreetmap.josm.gui.ConditionalOptionPaneUtil;
+import org.openstreetmap.josm.gui.ExtendedDialog;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.SideButton;
 import org.openstreetmap.josm.gui.dialogs.ToggleDialog;
@@ -55,10 +74,12 @@ import org.openstreetmap.josm.gui.layer.LayerManager.LayerRemoveEvent;
 import org.openstreetmap.josm.gui.layer.MainLayerManager;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.gui.util.HighlightHelper;
+import org.openstreetmap.josm.gui.widgets.FileChooserManager;
 import org.openstreetmap.josm.gui.widgets.ListPopupMenu;
 import org.openstreetmap.josm.gui.widgets.PopupMenuLauncher;
 import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.InputMapUtils;
+import org.openstreetmap.josm.tools.Logging;
 import org.openstreetmap.josm.tools.Shortcut;
 
 /**
@@ -68,18 +89,45 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
 
     @Serial
     private static final long serialVersionUID = 3590739974800809827L;
+    /** The delay used to coalesce title and statistics refreshes, about one frame */
+    private static final int REFRESH_DELAY = 16;
+    /** Whether the todo and done items are drawn on the map */
+    private static final BooleanProperty SHOW_ON_MAP = new BooleanProperty("todo.show-on-map", false);
+    /** Whether done items are verified again when they are changed */
+    private static final BooleanProperty AUTO_REVERIFY = new BooleanProperty("todo.reverify.auto", false);
+    /** Move the items of a layer that is merged into another layer to the other layer */
+    private static final BooleanProperty REMAP_MERGED = new BooleanProperty("todo.remap-merged", true);
+    /** The list size from which the rows get a fixed size, so the list view only lays out and paints the visible rows */
+    private static final IntegerProperty VIRTUAL_THRESHOLD = new IntegerProperty("todo.virtual-threshold", 10_000);
+    /** The delay used to collect changes of done items before verifying them again */
+    private static final int REVERIFY_DELAY = 2000;
 
     private final DefaultListSelectionModel selectionModel = new DefaultListSelectionModel();
     private final TodoListModel model = new TodoListModel(selectionModel);
-    private final JList<TodoListItem> lstPrimitives = new JList<>(model);
+    /* The actions are cheap, and their shortcuts must work before the dialog is first shown */
     private final AddAction actAdd = new AddAction(model);
     private final SelectAction actSelect = new SelectAction(model);
     private final PassAction actPass = new PassAction(model);
     private final MarkAction actMark = new MarkAction(model);
     private final MarkSelectedAction actMarkSelected = new MarkSelectedAction(model);
     private final ClearAndAddAction actClearAndAdd = new ClearAndAddAction(model);
-    /* The popup must be created AFTER actions */
-    private final TodoPopup popupMenu = new TodoPopup(lstPrimitives);
+    private final AddValidatorErrorsAction actAddValidatorErrors = new AddValidatorErrorsAction();
+    private final AddFromLayersAction actAddFromLayers = new AddFromLayersAction();
+    /* The list view and the popup are created by initialize() */
+    private JList<TodoListItem> lstPrimitives;
+    private JComboBox<String> listSelector;
+    private TodoPopup popupMenu;
+    private boolean initialized;
+    private TodoStatisticsPanel statisticsPanel;
+    private final transient TodoMapOverlay overlay = new TodoMapOverlay(model);
+    private boolean overlayVisible;
+    private boolean virtualMode;
+    /** A long list item, used to size the rows without rendering every item */
+    private transient TodoListItem prototype;
+    private final transient TodoListService service = new TodoListService(model, this::initialize);
+    private final transient TodoReviewedStore reviewedStore = new TodoReviewedStore(
+            Config.getDirs().getUserDataDirectory(true).toPath().resolve("todo").resolve("reviewed.bin"));
+    private final Timer reverifyTimer = new Timer(REVERIFY_DELAY, e -> reverifyChanged());
 
     /**
      * Constructs a new {@code TodoDialog}.
@@ -88,17 +136,53 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
         super(tr("Todo list"), "todo", tr("Open the todo list."),
                 Shortcut.registerShortcut("subwindow:todo", tr("Toggle: {0}", tr("Todo list")),
                         KeyEvent.VK_T, Shortcut.CTRL_SHIFT), 150);
-        buildContentPanel();
-
-        model.addListDataListener(new TitleUpdater());
-
-        MainApplication.getLayerManager().addLayerChangeListener(this);
-        DatasetEventManager.getInstance().addDatasetListener(model, FireMode.IN_EDT_CONSOLIDATED);
-        lstPrimitives.addMouseListener(new DblClickHandler());
-        lstPrimitives.addMouseListener(new TodoPopupLauncher());
-        toggleAction.addPropertyChangeListener(this);
+        selectionModel.addListSelectionListener(actSelect);
+        selectionModel.addListSelectionListener(actPass);
+        selectionModel.addListSelectionListener(actMark);
+        reverifyTimer.setRepeats(false);
+        model.setReviewedStore(reviewedStore);
+        model.setPriorityEnabled(TodoPriority.ENABLED.get());
+        model.addChangedDoneListener(() -> {
+            if (AUTO_REVERIFY.get()) {
+                reverifyTimer.restart();
+            }
+        });
+        TodoListService.setInstance(service);
+    }
 
-        InputMapUtils.addEnterAction(lstPrimitives, actSelect);
+    /**
+     * Build the content of the dialog and register the listeners of the todo list.
+     * <p>
+     * This is done when the dialog is first shown, an action is first used or the {@link TodoListService} first changes
+     * the list, so map frames with an unused todo list do not pay for it. The list is empty until then, so no events
+     * are missed.
+     */
+    void initialize() {
+        if (initialized)
+            return;
+        initialized = true;
+        try (var timer = TodoMetrics.time("dialog.initialize")) {
+            lstPrimitives = new JList<>(model);
+            listSelector = new JComboBox<>();
+            /* The popup must be created AFTER actions */
+            popupMenu = new TodoPopup(lstPrimitives);
+            buildContentPanel();
+
+            model.addListDataListener(new TitleUpdater());
+            model.addListDataListener(new VirtualModeUpdater());
+            model.getSelectionCounts().addListener(this::updateTitle);
+
+            MainApplication.getLayerManager().addLayerChangeListener(this);
+            DatasetEventManager.getInstance().addDatasetListener(model, FireMode.IN_EDT_CONSOLIDATED);
+            lstPrimitives.addMouseListener(new DblClickHandler());
+            lstPrimitives.addMouseListener(new TodoPopupLauncher());
+            toggleAction.addPropertyChangeListener(this);
+
+            InputMapUtils.addEnterAction(lstPrimitives, actSelect);
+            setOverlayVisible(SHOW_ON_MAP.get());
+            updateTitle();
+            revalidate();
+        }
     }
 
     /**
@@ -112,7 +196,6 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
 
         // the select action
         final var selectButton = new SideButton(actSelect);
-        lstPrimitives.getSelectionModel().addListSelectionListener(actSelect);
         actSelect.updateEnabledState();
 
         // the add button
@@ -120,20 +203,37 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
         actAdd.updateEnabledState();
 
         // the clear and add button
-        addButton.createArrow(l -> showPopupMenu(addButton, actClearAndAdd), true);
+        addButton.createArrow(l -> showPopupMenu(addButton, actClearAndAdd, actAddValidatorErrors, actAddFromLayers), true);
 
         // the pass button
         final var passButton = new SideButton(actPass);
-        lstPrimitives.getSelectionModel().addListSelectionListener(actPass);
 
         // the mark button
         final var markButton = new SideButton(actMark);
-        lstPrimitives.getSelectionModel().addListSelectionListener(actMark);
 
         // the mark from map button
         final var markSelectedButton = new SideButton(actMarkSelected);
 
-        createLayout(lstPrimitives, true, Arrays.asList(selectButton, addButton, passButton, markButton, markSelectedButton));
+        // the list selector
+        updateListSelector();
+        listSelector.setToolTipText(tr("The todo list to show"));
+        listSelector.addActionListener(e -> {
+            if (listSelector.getSelectedItem() instanceof String name && !name.equals(model.getCurrentList())) {
+                model.switchList(name);
+            }
+        });
+        final var panel = new JPanel(new BorderLayout());
+        panel.add(listSelector, BorderLayout.NORTH);
+        panel.add(new JScrollPane(lstPrimitives), BorderLayout.CENTER);
+
+        createLayout(panel, false, Arrays.asList(selectButton, addButton, passButton, markButton, markSelectedButton));
+    }
+
+    private void updateListSelector() {
+        final var names = model.getListNames();
+        listSelector.setModel(new DefaultComboBoxModel<>(names.toArray(new String[0])));
+        listSelector.setSelectedItem(model.getCurrentList());
+        listSelector.setVisible(names.size() > 1);
     }
 
     private static void showPopupMenu(Component parent, Object... menuItems) {
@@ -170,6 +270,13 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
 
     static void selectAndZoom(Collection<TodoListItem> object) {
         if (object == null || object.isEmpty()) return;
+        try (var timer = TodoMetrics.time("action.selectAndZoom")) {
+            timer.items(object.size());
+            doSelectAndZoom(object);
+        }
+    }
+
+    private static void doSelectAndZoom(Collection<TodoListItem> object) {
         Map<AbstractOsmDataLayer, Set<IPrimitive>> sorted = object.stream()
                 .collect(Collectors.groupingBy(TodoListItem::layer, Collectors.mapping(TodoListItem::primitive, Collectors.toSet())));
         sorted.forEach((layer, selected) -> layer.getDataSet().setSelected(selected));
@@ -192,23 +299,58 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
         }
     }
 
+    private void setOverlayVisible(boolean visible) {
+        if (visible == overlayVisible)
+            return;
+        overlayVisible = visible;
+        if (visible) {
+            model.addListDataListener(overlay);
+        } else {
+            model.removeListDataListener(overlay);
+        }
+        if (MainApplication.getMap() != null && MainApplication.getMap().mapView != null) {
+            final var mapView = MainApplication.getMap().mapView;
+            if (visible) {
+                mapView.addTemporaryLayer(overlay);
+            } else {
+                mapView.removeTemporaryLayer(overlay);
+            }
+            mapView.repaint();
+        }
+    }
+
+    /**
+     * Verify the done items that were changed since they were last verified
+     */
+    private void reverifyChanged() {
+        final var items = model.pollChangedDone();
+        if (!items.isEmpty()) {
+            MainApplication.worker.submit(new TodoReverifyTask(model, items));
+        }
+    }
+
     protected void updateTitle() {
-        setTitle(model.getSummary());
+        final var selection = model.getSelectionCounts().getSummary();
+        setTitle(selection.isEmpty() ? model.getSummary() : model.getSummary() + ", " + selection);
+        actAdd.updateEnabledState();
+        actClearAndAdd.updateEnabledState();
+        actMarkSelected.updateEnabledState();
+        if (statisticsPanel != null && statisticsPanel.isShowing()) {
+            statisticsPanel.refresh();
+        }
     }
 
     @Override
     public void showNotify() {
-        SelectionEventManager.getInstance().addSelectionListenerForEdt(actAdd);
-        SelectionEventManager.getInstance().addSelectionListenerForEdt(actClearAndAdd);
-        SelectionEventManager.getInstance().addSelectionListenerForEdt(actMarkSelected);
-        actAdd.updateEnabledState();
+        initialize();
+        SelectionEventManager.getInstance().addSelectionListenerForEdt(model.getSelectionCounts());
+        model.getSelectionCounts().setDataSet(MainApplication.getLayerManager().getActiveData());
     }
 
     @Override
     public void hideNotify() {
-        SelectionEventManager.getInstance().removeSelectionListener(actAdd);
-        SelectionEventManager.getInstance().removeSelectionListener(actClearAndAdd);
-        SelectionEventManager.getInstance().removeSelectionListener(actMarkSelected);
+        SelectionEventManager.getInstance().removeSelectionListener(model.getSelectionCounts());
+        model.getSelectionCounts().setDataSet(null);
     }
 
     Collection<TodoListItem> getItems() {
@@ -216,16 +358,48 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
         if (layer == null)
             return Collections.emptyList();
 
-        return layer.getDataSet().getSelected().stream().map(primitive -> new TodoListItem(layer, primitive)).collect(Collectors.toList());
+        return TodoExpansion.expand(layer.getDataSet(), layer.getDataSet().getSelected()).stream()
+                .map(primitive -> new TodoListItem(layer, primitive)).collect(Collectors.toList());
     }
 
-    private void runWithPrototype(Runnable runnable) {
-        // Set a prototype value to speed up the list painting when `setSelection` methods are called (they call `getListCellRendererComponent`
-        // on every list item)
-        this.lstPrimitives.setPrototypeCellValue(new TodoListItem(new OsmDataLayer(new DataSet(), "XXXXXXXXXXXXXXXXXXXXXXXX", null),
-                new Relation(Long.MAX_VALUE, Integer.MAX_VALUE)));
-        runnable.run();
-        this.lstPrimitives.setPrototypeCellValue(null);
+    private void runWithPrototype(String operation, Runnable runnable) {
+        try (var timer = TodoMetrics.time("action." + operation)) {
+            timer.items(model.getSize());
+            // Set a prototype value to speed up the list painting when `setSelection` methods are called (they call
+            // `getListCellRendererComponent` on every list item)
+            this.lstPrimitives.setPrototypeCellValue(getPrototype());
+            runnable.run();
+            if (!virtualMode)
+                this.lstPrimitives.setPrototypeCellValue(null);
+        }
+    }
+
+    private TodoListItem getPrototype() {
+        if (prototype == null) {
+            prototype = new TodoListItem(new OsmDataLayer(new DataSet(), "XXXXXXXXXXXXXXXXXXXXXXXX", null),
+                    new Relation(Long.MAX_VALUE, Integer.MAX_VALUE));
+        }
+        return prototype;
+    }
+
+    /**
+     * Give the rows a fixed size when the list is long, and let the list view size them when it is short again.
+     * <p>
+     * With a fixed row size the list view does not render every row to lay out the list, so scrolling and painting
+     * only depend on the visible rows.
+     */
+    private void updateVirtualMode() {
+        final var virtual = model.getSize() > VIRTUAL_THRESHOLD.get();
+        if (virtual == virtualMode)
+            return;
+        virtualMode = virtual;
+        if (virtual) {
+            lstPrimitives.setPrototypeCellValue(getPrototype());
+        } else {
+            lstPrimitives.setPrototypeCellValue(null);
+            lstPrimitives.setFixedCellHeight(-1);
+            lstPrimitives.setFixedCellWidth(-1);
+        }
     }
 
     private static class SelectAction extends JosmAction implements ListSelectionListener {
@@ -322,7 +496,8 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
 
         @Override
         public void actionPerformed(ActionEvent e) {
-            runWithPrototype(model::incrementSelection);
+            initialize();
+            runWithPrototype("pass", model::incrementSelection);
             selectAndZoom(model.getSelected());
         }
 
@@ -340,7 +515,7 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
         }
     }
 
-    private class AddAction extends JosmAction implements DataSelectionListener {
+    private class AddAction extends JosmAction {
         @Serial
         private static final long serialVersionUID = 1946908728505665451L;
         private final TodoListModel model;
@@ -360,28 +535,21 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
 
         @Override
         public void actionPerformed(ActionEvent e) {
-            runWithPrototype(() -> model.addItems(getItems()));
+            initialize();
+            runWithPrototype("add", () -> model.addItems(model.withoutReviewed(getItems())));
         }
 
         /**
-         * Update the enabled state of the action
+         * Update the enabled state of the action, it is enabled if a selected object is not in the todo list
          */
         @Override
         public void updateEnabledState() {
-            if (MainApplication.getLayerManager().getActiveData() == null) {
-                setEnabled(false);
-            } else {
-                setEnabled(!MainApplication.getLayerManager().getActiveData().selectionEmpty());
-            }
-        }
-
-        @Override
-        public void selectionChanged(SelectionChangeEvent event) {
-            updateEnabledState();
+            final var counts = model.getSelectionCounts();
+            setEnabled(counts.getCount(TodoSelectionCounts.Membership.NEW) + counts.getCount(TodoSelectionCounts.Membership.DONE) > 0);
         }
     }
 
-    private class ClearAndAddAction extends JosmAction implements DataSelectionListener {
+    private class ClearAndAddAction extends JosmAction {
         @Serial
         private static final long serialVersionUID = 6877280292029877851L;
         private final TodoListModel model;
@@ -400,32 +568,86 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
 
         @Override
         public void actionPerformed(ActionEvent e) {
-            runWithPrototype(() -> {
+            initialize();
+            runWithPrototype("clearAndAdd", () -> {
                         model.clear();
-                        model.addItems(getItems());
+                        model.addItems(model.withoutReviewed(getItems()));
                     });
             selectAndZoom(model.getSelected());
         }
 
         /**
-         * Update the enabled state of the action
+         * Update the enabled state of the action, it is enabled if objects are selected
          */
         @Override
         public void updateEnabledState() {
-            if (MainApplication.getLayerManager().getActiveData() == null) {
-                setEnabled(false);
-            } else {
-                setEnabled(!MainApplication.getLayerManager().getActiveData().selectionEmpty());
-            }
+            setEnabled(model.getSelectionCounts().getSelectedCount() > 0);
+        }
+    }
+
+    private class AddValidatorErrorsAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = -2717310785233766567L;
+
+        AddValidatorErrorsAction() {
+            super(
+                    tr("Add validator errors"),
+                    "dialogs/validator",
+                    tr("Validate the selection, or the whole layer if nothing is selected, and add the objects with errors to the todo list."),
+                    Shortcut.registerShortcut("subwindow:todo:add_validator_errors", tr("Add validator errors to the todo list"),
+                            KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
         }
 
         @Override
-        public void selectionChanged(SelectionChangeEvent event) {
-            updateEnabledState();
+        public void actionPerformed(ActionEvent e) {
+            final OsmDataLayer layer = MainApplication.getLayerManager().getActiveDataLayer();
+            if (layer == null)
+                return;
+            initialize();
+            final var dataSet = layer.getDataSet();
+            final var partialSelection = !dataSet.selectionEmpty();
+            final Collection<OsmPrimitive> primitives = partialSelection
+                    ? dataSet.getAllSelected() : dataSet.allNonDeletedPrimitives();
+            MainApplication.worker.submit(new TodoValidatorTask(model, layer, primitives, partialSelection));
         }
     }
 
-    private class MarkSelectedAction extends JosmAction implements DataSelectionListener {
+    private class AddFromLayersAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = -4460862357101372069L;
+
+        AddFromLayersAction() {
+            super(
+                    tr("Add from all layers..."),
+                    "dialogs/add",
+                    tr("Add the selected, modified or matching objects of all data layers to the todo list."),
+                    Shortcut.registerShortcut("subwindow:todo:add_layers",
+                            tr("Add objects of all layers to the todo list"), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (MainApplication.getLayerManager().getLayersOfType(AbstractOsmDataLayer.class).isEmpty())
+                return;
+            final var panel = new TodoAddLayersPanel();
+            final var dialog = new ExtendedDialog(MainApplication.getMainFrame(), tr("Add from all layers"), tr("Add"), tr("Cancel"))
+                    .setContent(panel, false)
+                    .setButtonIcons("dialogs/add", "cancel")
+                    .showDialog();
+            if (dialog.getValue() == 1) {
+                initialize();
+                final var task = panel.createTask(model);
+                if (task != null)
+                    MainApplication.worker.submit(task);
+            }
+        }
+    }
+
+    private class MarkSelectedAction extends JosmAction {
         @Serial
         private static final long serialVersionUID = 4978820863995799461L;
         private final TodoListModel model;
@@ -445,24 +667,19 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
 
         @Override
         public void actionPerformed(ActionEvent e) {
-            runWithPrototype(() -> model.markItems(getItems()));
+            final var layer = MainApplication.getLayerManager().getActiveDataLayer();
+            if (layer == null)
+                return;
+            initialize();
+            runWithPrototype("markSelected", () -> model.markPrimitives(layer, layer.getDataSet().getAllSelected()));
         }
 
         /**
-         * Update the enabled state of the action
+         * Update the enabled state of the action, it is enabled if a selected object is in the todo list
          */
         @Override
         public void updateEnabledState() {
-            if (MainApplication.getLayerManager().getActiveData() == null) {
-                setEnabled(false);
-            } else {
-                setEnabled(!MainApplication.getLayerManager().getActiveData().selectionEmpty());
-            }
-        }
-
-        @Override
-        public void selectionChanged(SelectionChangeEvent event) {
-            updateEnabledState();
+            setEnabled(model.getSelectionCounts().getCount(TodoSelectionCounts.Membership.TODO) > 0);
         }
     }
 
@@ -486,7 +703,8 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
 
         @Override
         public void actionPerformed(ActionEvent arg0) {
-            runWithPrototype(() -> model.markItems(model.getSelected()));
+            initialize();
+            runWithPrototype("mark", model::markSelectedItems);
             selectAndZoom(model.getSelected());
         }
 
@@ -524,7 +742,15 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
 
         @Override
         public void actionPerformed(ActionEvent arg0) {
-            model.markAll();
+            if (TodoBulkTask.isChunked(model.getSize())) {
+                MainApplication.worker.submit(new TodoBulkTask(tr("Marking all todo items"),
+                        model.startBulkChange(TodoListCore.BulkOperation.MARK_ALL), () -> selectAndZoom(model.getSelected())));
+                return;
+            }
+            try (var timer = TodoMetrics.time("action.markAll")) {
+                timer.items(model.getSize());
+                model.markAll();
+            }
             selectAndZoom(model.getSelected());
         }
     }
@@ -549,7 +775,15 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
 
         @Override
         public void actionPerformed(ActionEvent arg0) {
-            model.unmarkAll();
+            if (TodoBulkTask.isChunked(model.getDoneSize())) {
+                MainApplication.worker.submit(new TodoBulkTask(tr("Unmarking all done items"),
+                        model.startBulkChange(TodoListCore.BulkOperation.UNMARK_ALL)));
+                return;
+            }
+            try (var timer = TodoMetrics.time("action.unmarkAll")) {
+                timer.items(model.getDoneSize());
+                model.unmarkAll();
+            }
         }
     }
 
@@ -573,7 +807,81 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
 
         @Override
         public void actionPerformed(ActionEvent arg0) {
-            model.clear();
+            if (TodoBulkTask.isChunked(model.getSize() + model.getDoneSize())) {
+                MainApplication.worker.submit(new TodoBulkTask(tr("Clearing the todo list"),
+                        model.startBulkChange(TodoListCore.BulkOperation.CLEAR)));
+                return;
+            }
+            try (var timer = TodoMetrics.time("action.clear")) {
+                timer.items(model.getSize() + model.getDoneSize());
+                model.clear();
+            }
+        }
+    }
+
+    private static class UndoAction extends JosmAction {
+
+        @Serial
+        private static final long serialVersionUID = 2394604617361524286L;
+        TodoListModel model;
+
+        UndoAction(TodoListModel model) {
+            super(
+                    tr("Undo"),
+                    "undo",
+                    tr("Undo the last change to the todo list."),
+                    Shortcut.registerShortcut("subwindow:todo:undo",
+                            tr("Undo the last change to the todo list."), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+            this.model = model;
+            model.addHistoryListener(this::updateEnabledState);
+            updateEnabledState();
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent arg0) {
+            try (var timer = TodoMetrics.time("action.undo")) {
+                model.undo();
+            }
+        }
+
+        @Override
+        protected void updateEnabledState() {
+            setEnabled(model != null && model.getHistory().canUndo());
+        }
+    }
+
+    private static class RedoAction extends JosmAction {
+
+        @Serial
+        private static final long serialVersionUID = -7741454361337407553L;
+        TodoListModel model;
+
+        RedoAction(TodoListModel model) {
+            super(
+                    tr("Redo"),
+                    "redo",
+                    tr("Redo the last undone change to the todo list."),
+                    Shortcut.registerShortcut("subwindow:todo:redo",
+                            tr("Redo the last undone change to the todo list."), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+            this.model = model;
+            model.addHistoryListener(this::updateEnabledState);
+            updateEnabledState();
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent arg0) {
+            try (var timer = TodoMetrics.time("action.redo")) {
+                model.redo();
+            }
+        }
+
+        @Override
+        protected void updateEnabledState() {
+            setEnabled(model != null && model.getHistory().canRedo());
         }
     }
 
@@ -637,26 +945,743 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
             addSeparator();
             add(actMarkSelected);
             add(new SelectUnmarkedAction(model));
+            add(new NextNearestAction());
+            add(new AddVisibleAction());
+            add(new MarkVisibleAction());
+            add(new ReverifyAction());
+            add(new JCheckBoxMenuItem(new AutoReverifyAction()));
+            add(new JCheckBoxMenuItem(new PriorityAction()));
+            final var rules = new JMenu(tr("Automatic changes"));
+            rules.add(new JCheckBoxMenuItem(new PreferenceAction(TodoAutoRules.MARK_MODIFIED, "rule_mark_modified",
+                    tr("Mark when modified"), tr("Mark todo items as done when their object is modified."))));
+            rules.add(new MarkTagsAction());
+            rules.add(new JCheckBoxMenuItem(new PreferenceAction(TodoAutoRules.REOPEN_EDITED, "rule_reopen_edited",
+                    tr("Reopen when edited again"), tr("Move done items back to the todo list when their object is changed again."))));
+            add(rules);
+            final var expand = new JMenu(tr("Expand on add"));
+            expand.add(new JCheckBoxMenuItem(new PreferenceAction(TodoExpansion.MEMBERS, "expand_members",
+                    tr("Add relation members"), tr("Also add the members of added relations, and of their member relations."))));
+            expand.add(new JCheckBoxMenuItem(new PreferenceAction(TodoExpansion.NODES, "expand_nodes",
+                    tr("Add way nodes"), tr("Also add the nodes of added ways."))));
+            add(expand);
+            add(new JCheckBoxMenuItem(new PreferenceAction(TodoReviewedStore.SKIP_REVIEWED, "skip_reviewed",
+                    tr("Skip reviewed objects"), tr("Do not add objects that were already marked as done in the same version."))));
+            add(new ForgetReviewedAction());
+            addSeparator();
+            add(new UndoAction(model));
+            add(new RedoAction(model));
+            addSeparator();
+            final var setState = new JMenu(tr("Set state"));
+            final var selectState = new JMenu(tr("Select by state"));
+            for (var state : TodoItemState.values()) {
+                setState.add(new SetStateAction(state));
+                if (state != TodoItemState.DONE)
+                    selectState.add(new SelectStateAction(state));
+            }
+            add(setState);
+            add(selectState);
+            addSeparator();
+            add(new NewListAction());
+            add(new DeleteListAction());
+            add(new SetOperationAction());
+            final var shards = new JMenu(tr("Id files"));
+            shards.add(new SplitShardsAction());
+            shards.add(new ExportIdsAction());
+            shards.add(new ImportIdsAction());
+            shards.add(new MergeDoneIdsAction());
+            add(shards);
+            addSeparator();
+            add(new JCheckBoxMenuItem(new ShowOnMapAction()));
+            add(new StatisticsAction());
+            add(new MetricsAction());
+        }
+    }
+
+    private class NewListAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = 5484232766425226317L;
+
+        NewListAction() {
+            super(
+                    tr("New list..."),
+                    "dialogs/add",
+                    tr("Create another todo list and show it."),
+                    Shortcut.registerShortcut("subwindow:todo:new_list",
+                            tr("Create another todo list and show it."), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            final var name = JOptionPane.showInputDialog(MainApplication.getMainFrame(), tr("Name of the new todo list:"),
+                    tr("New todo list"), JOptionPane.QUESTION_MESSAGE);
+            if (name == null)
+                return;
+            if (!model.addList(name.trim())) {
+                JOptionPane.showMessageDialog(MainApplication.getMainFrame(),
+                        tr("A todo list with this name already exists."), tr("New todo list"), JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            model.switchList(name.trim());
+            updateListSelector();
+        }
+    }
+
+    private class SetOperationAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = -2361843707683418524L;
+
+        SetOperationAction() {
+            super(
+                    tr("Combine with..."),
+                    "dialogs/todo",
+                    tr("Combine the todo list with the map selection, the done items, another list or a list of ids."),
+                    Shortcut.registerShortcut("subwindow:todo:set_operation",
+                            tr("Combine the todo list with other objects"), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            final var panel = new TodoSetOperationPanel(model);
+            final var dialog = new ExtendedDialog(MainApplication.getMainFrame(), tr("Combine todo list"), tr("Apply"), tr("Cancel"))
+                    .setContent(panel, false)
+                    .setButtonIcons("ok", "cancel")
+                    .showDialog();
+            if (dialog.getValue() == 1) {
+                runWithPrototype("setOperation", panel::apply);
+            }
+        }
+    }
+
+    private class SplitShardsAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = -6081469373180532604L;
+
+        SplitShardsAction() {
+            super(
+                    tr("Split into shards..."),
+                    "dialogs/todo",
+                    tr("Split the todo items into spatially compact shards and write every shard to an id file."),
+                    Shortcut.registerShortcut("subwindow:todo:split_shards",
+                            tr("Split the todo list into shards"), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (model.getSize() == 0)
+                return;
+            final var input = JOptionPane.showInputDialog(MainApplication.getMainFrame(), tr("Number of shards:"), "4");
+            if (input == null)
+                return;
+            final int count;
+            try {
+                count = Integer.parseInt(input.trim());
+            } catch (NumberFormatException ex) {
+                count = 0;
+            }
+            if (count < 1 || count > model.getSize()) {
+                JOptionPane.showMessageDialog(MainApplication.getMainFrame(),
+                        tr("The number of shards must be between 1 and {0}.", model.getSize()), tr("Error"), JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            final var fileChooser = new FileChooserManager(true, "todo.shards.lastDirectory")
+                    .createFileChooser(false, tr("Directory of the shard files"), null, JFileChooser.DIRECTORIES_ONLY)
+                    .openFileChooser();
+            if (fileChooser == null)
+                return;
+            // The positions are cached by the geometry, which is only read in the event dispatch thread
+            final var items = List.copyOf(model.getTodoList());
+            final var geometry = model.getGeometry();
+            final var positions = new ArrayList<EastNorth>(items.size());
+            for (var item : items) {
+                positions.add(geometry.getPosition(item));
+            }
+            MainApplication.worker.submit(new TodoShardTask(items, positions, count, fileChooser.getSelectedFile().toPath(),
+                    model.getCurrentList().replaceAll("[^\\w-]", "_")));
+        }
+    }
+
+    private class ExportIdsAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = 2925120651867337045L;
+
+        ExportIdsAction() {
+            super(
+                    tr("Export ids..."),
+                    "save",
+                    tr("Write the ids of the todo and done items to a file."),
+                    Shortcut.registerShortcut("subwindow:todo:export_ids",
+                            tr("Write the ids of the todo list to a file"), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            final var fileChooser = new FileChooserManager(false, "todo.shards.lastDirectory").openFileChooser();
+            if (fileChooser == null)
+                return;
+            try {
+                TodoIdFile.write(fileChooser.getSelectedFile().toPath(), model.getTodoList(), model.getDoneList());
+            } catch (IOException ex) {
+                Logging.error(ex);
+                JOptionPane.showMessageDialog(MainApplication.getMainFrame(),
+                        tr("Could not write the ids: {0}", ex.getMessage()), tr("Error"), JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Read an id file chosen by the user
+     * @return The ids, or {@code null} if no file was chosen or it could not be read
+     */
+    private static TodoIdFile.Ids readIdFile() {
+        final var fileChooser = new FileChooserManager(true, "todo.shards.lastDirectory").openFileChooser();
+        if (fileChooser == null)
+            return null;
+        try {
+            return TodoIdFile.read(fileChooser.getSelectedFile().toPath());
+        } catch (IOException ex) {
+            Logging.error(ex);
+            JOptionPane.showMessageDialog(MainApplication.getMainFrame(),
+                    tr("Could not read the ids: {0}", ex.getMessage()), tr("Error"), JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+    }
+
+    private class ImportIdsAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = 7771502340562932129L;
+
+        ImportIdsAction() {
+            super(
+                    tr("Import ids..."),
+                    "open",
+                    tr("Add the objects of an id file in the active layer to the todo list, and mark the done ones."),
+                    Shortcut.registerShortcut("subwindow:todo:import_ids",
+                            tr("Add the objects of an id file to the todo list"), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            final var layer = MainApplication.getLayerManager().getActiveDataLayer();
+            if (layer == null)
+                return;
+            final var ids = readIdFile();
+            if (ids == null)
+                return;
+            final var todo = TodoIdSet.of(layer, ids.todo()).toItems();
+            final var done = TodoIdSet.of(layer, ids.done()).toItems();
+            runWithPrototype("importIds", () -> model.batch(() -> {
+                final var all = new ArrayList<>(todo);
+                all.addAll(done);
+                model.addItems(all);
+                model.markItems(done);
+            }));
+        }
+    }
+
+    private class MergeDoneIdsAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = -3260383460860224384L;
+
+        MergeDoneIdsAction() {
+            super(
+                    tr("Merge done ids..."),
+                    "dialogs/todo",
+                    tr("Mark the todo items as done that are done in an id file, e.g. a shard that was worked on."),
+                    Shortcut.registerShortcut("subwindow:todo:merge_done_ids",
+                            tr("Mark the todo items that are done in an id file"), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            final var layer = MainApplication.getLayerManager().getActiveDataLayer();
+            if (layer == null)
+                return;
+            final var ids = readIdFile();
+            if (ids == null)
+                return;
+            final var done = TodoIdSet.of(layer, ids.done());
+            final var hits = model.getTodoList().stream().filter(done::contains).toList();
+            runWithPrototype("mergeDoneIds", () -> model.markItems(hits));
+        }
+    }
+
+    private class DeleteListAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = -1129581473342516880L;
+
+        DeleteListAction() {
+            super(
+                    tr("Delete list"),
+                    "dialogs/delete",
+                    tr("Delete the todo list that is shown."),
+                    Shortcut.registerShortcut("subwindow:todo:delete_list",
+                            tr("Delete the todo list that is shown."), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (!model.removeList(model.getCurrentList())) {
+                // The last list cannot be deleted, so just empty it
+                model.clear();
+            }
+            updateListSelector();
+        }
+    }
+
+    private class NextNearestAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = -4271338416981263962L;
+
+        NextNearestAction() {
+            super(
+                    tr("Next nearest item"),
+                    "dialogs/next",
+                    tr("Select and zoom to the todo item nearest to the mouse or the map center."),
+                    Shortcut.registerShortcut("subwindow:todo:next_nearest",
+                            tr("Select and zoom to the todo item nearest to the mouse or the map center."), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (!MainApplication.isDisplayingMapView())
+                return;
+            final var mapView = MainApplication.getMap().mapView;
+            final var mouse = mapView.getMousePosition();
+            final var position = mouse != null ? mapView.getEastNorth(mouse.x, mouse.y) : mapView.getCenter();
+            final TodoListItem nearest;
+            try (var timer = TodoMetrics.time("action.nextNearest")) {
+                nearest = model.getGeometry().getNearest(position);
+            }
+            if (nearest != null) {
+                model.setSelected(Collections.singleton(nearest));
+                lstPrimitives.ensureIndexIsVisible(selectionModel.getMinSelectionIndex());
+                selectAndZoom(nearest);
+            }
+        }
+    }
+
+    private class AddVisibleAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = 2963167405016108870L;
+
+        AddVisibleAction() {
+            super(
+                    tr("Add visible items"),
+                    "dialogs/add",
+                    tr("Add the tagged objects of the active layer that are in the current map view to the todo list."),
+                    Shortcut.registerShortcut("subwindow:todo:add_visible",
+                            tr("Add the tagged objects of the active layer that are in the current map view to the todo list."),
+                            KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            final OsmDataLayer layer = MainApplication.getLayerManager().getActiveDataLayer();
+            if (layer == null || !MainApplication.isDisplayingMapView())
+                return;
+            final var bounds = MainApplication.getMap().mapView.getRealBounds();
+            final var bbox = new BBox(bounds.getMinLon(), bounds.getMinLat(), bounds.getMaxLon(), bounds.getMaxLat());
+            final var dataSet = layer.getDataSet();
+            // The data set queries use its own spatial index, so this does not depend on the size of the data set
+            final var items = Stream.of(dataSet.searchNodes(bbox), dataSet.searchWays(bbox), dataSet.searchRelations(bbox))
+                    .flatMap(Collection::stream)
+                    .filter(primitive -> primitive.isUsable() && primitive.isTagged())
+                    .map(primitive -> new TodoListItem(layer, primitive))
+                    .collect(Collectors.toList());
+            runWithPrototype("addVisible", () -> model.addItems(model.withoutReviewed(items)));
+        }
+    }
+
+    private class MarkVisibleAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = -3436212826094853862L;
+
+        MarkVisibleAction() {
+            super(
+                    tr("Mark visible items"),
+                    "dialogs/check",
+                    tr("Mark the todo items in the current map view as done."),
+                    Shortcut.registerShortcut("subwindow:todo:mark_visible",
+                            tr("Mark the todo items in the current map view as done."), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (!MainApplication.isDisplayingMapView())
+                return;
+            final var bounds = MainApplication.getMap().mapView.getProjectionBounds();
+            runWithPrototype("markVisible", () -> model.markItems(model.getGeometry().getItems(bounds, false)));
+        }
+    }
+
+    private class ShowOnMapAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = 1624180954396516637L;
+
+        ShowOnMapAction() {
+            super(
+                    tr("Show on map"),
+                    "dialogs/todo",
+                    tr("Draw markers for the todo and done items on the map."),
+                    Shortcut.registerShortcut("subwindow:todo:show_on_map",
+                            tr("Draw markers for the todo and done items on the map."), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+            putValue(SELECTED_KEY, SHOW_ON_MAP.get());
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            final var visible = !SHOW_ON_MAP.get();
+            SHOW_ON_MAP.put(visible);
+            putValue(SELECTED_KEY, visible);
+            setOverlayVisible(visible);
+        }
+    }
+
+    private class ReverifyAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = 3349256915498740436L;
+
+        ReverifyAction() {
+            super(
+                    tr("Verify done items"),
+                    "dialogs/validator",
+                    tr("Validate the done items again and move the items with errors back to the todo list."),
+                    Shortcut.registerShortcut("subwindow:todo:reverify",
+                            tr("Validate the done items of the todo list again"), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            // All done items are verified, so the pending changes are covered
+            model.pollChangedDone();
+            if (model.getDoneSize() > 0) {
+                MainApplication.worker.submit(new TodoReverifyTask(model, new ArrayList<>(model.getDoneList())));
+            }
+        }
+    }
+
+    private class PriorityAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = 5322318562411707826L;
+
+        PriorityAction() {
+            super(
+                    tr("Work by priority"),
+                    "dialogs/todo",
+                    tr("Pass and mark go to the todo item with the highest priority instead of the next item in the list."),
+                    Shortcut.registerShortcut("subwindow:todo:priority",
+                            tr("Work on the todo list by priority"), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+            putValue(SELECTED_KEY, TodoPriority.ENABLED.get());
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            final var enabled = !TodoPriority.ENABLED.get();
+            TodoPriority.ENABLED.put(enabled);
+            putValue(SELECTED_KEY, enabled);
+            runWithPrototype("priority", () -> model.setPriorityEnabled(enabled));
+        }
+    }
+
+    private class AutoReverifyAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = -7788516213960541523L;
+
+        AutoReverifyAction() {
+            super(
+                    tr("Verify changed done items"),
+                    "dialogs/validator",
+                    tr("Validate done items again when they are changed, and move the items with errors back to the todo list."),
+                    Shortcut.registerShortcut("subwindow:todo:auto_reverify",
+                            tr("Validate changed done items of the todo list"), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+            putValue(SELECTED_KEY, AUTO_REVERIFY.get());
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            final var enabled = !AUTO_REVERIFY.get();
+            AUTO_REVERIFY.put(enabled);
+            putValue(SELECTED_KEY, enabled);
+            if (enabled) {
+                reverifyTimer.restart();
+            } else {
+                reverifyTimer.stop();
+            }
+        }
+    }
+
+    private class SetStateAction extends JosmAction implements ListSelectionListener {
+        @Serial
+        private static final long serialVersionUID = -4483003604935627291L;
+        private final TodoItemState state;
+
+        SetStateAction(TodoItemState state) {
+            super(
+                    state.getDisplayName(),
+                    "dialogs/todo",
+                    tr("Set the state of the selected items to \"{0}\".", state.getDisplayName()),
+                    Shortcut.registerShortcut("subwindow:todo:set_state_" + state.name().toLowerCase(Locale.ROOT),
+                            tr("Set the state of the selected todo items to \"{0}\"", state.getDisplayName()),
+                            KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+            this.state = state;
+            lstPrimitives.getSelectionModel().addListSelectionListener(this);
+            updateEnabledState();
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            runWithPrototype("setState", () -> model.setSelectedState(state));
+        }
+
+        @Override
+        protected void updateEnabledState() {
+            setEnabled(!model.isSelectionEmpty());
+        }
+
+        @Override
+        public void valueChanged(ListSelectionEvent e) {
+            updateEnabledState();
+        }
+    }
+
+    private class SelectStateAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = 2606215380370913440L;
+        private final TodoItemState state;
+
+        SelectStateAction(TodoItemState state) {
+            super(
+                    state.getDisplayName(),
+                    "dialogs/select",
+                    tr("Select the items in the state \"{0}\".", state.getDisplayName()),
+                    Shortcut.registerShortcut("subwindow:todo:select_state_" + state.name().toLowerCase(Locale.ROOT),
+                            tr("Select the todo items in the state \"{0}\"", state.getDisplayName()),
+                            KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+            this.state = state;
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            runWithPrototype("selectState", () -> model.selectState(state));
+        }
+    }
+
+    private static class PreferenceAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = 6097364521186331905L;
+        private final transient BooleanProperty property;
+
+        PreferenceAction(BooleanProperty property, String id, String name, String tooltip) {
+            super(name, "dialogs/todo", tooltip,
+                    Shortcut.registerShortcut("subwindow:todo:" + id, tooltip, KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false);
+            this.property = property;
+            putValue(SELECTED_KEY, property.get());
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            final var enabled = !property.get();
+            property.put(enabled);
+            putValue(SELECTED_KEY, enabled);
+        }
+    }
+
+    private class ForgetReviewedAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = 8213400693196372260L;
+
+        ForgetReviewedAction() {
+            super(
+                    tr("Forget reviewed objects"),
+                    "dialogs/delete",
+                    tr("Forget which objects were marked as done, so they are added to the todo list again."),
+                    Shortcut.registerShortcut("subwindow:todo:forget_reviewed",
+                            tr("Forget which objects were marked as done in the todo list"), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (JOptionPane.showConfirmDialog(MainApplication.getMainFrame(),
+                    tr("Forget the {0} objects that were marked as done?", reviewedStore.size()),
+                    tr("Forget reviewed objects"), JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+                reviewedStore.clear();
+            }
+        }
+    }
+
+    private static class MarkTagsAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = -1930576404151826553L;
+
+        MarkTagsAction() {
+            super(
+                    tr("Mark when tags are added..."),
+                    "dialogs/todo",
+                    tr("Mark todo items as done when one of the given keys is added to their object."),
+                    Shortcut.registerShortcut("subwindow:todo:rule_mark_tags",
+                            tr("Mark todo items as done when one of the given keys is added to their object."),
+                            KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            final var keys = JOptionPane.showInputDialog(MainApplication.getMainFrame(),
+                    tr("Keys that mark an item as done when they are added, separated by commas (empty to disable):"),
+                    String.join(", ", TodoAutoRules.MARK_TAGS.get()));
+            if (keys == null)
+                return;
+            TodoAutoRules.MARK_TAGS.put(Arrays.stream(keys.split(","))
+                    .map(String::trim)
+                    .filter(key -> !key.isEmpty())
+                    .distinct()
+                    .toList());
+        }
+    }
+
+    private class StatisticsAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = -5206236425931405722L;
+
+        StatisticsAction() {
+            super(
+                    tr("Statistics"),
+                    "dialogs/info",
+                    tr("Show the progress of the todo list per layer and per object type."),
+                    Shortcut.registerShortcut("subwindow:todo:statistics",
+                            tr("Show the progress of the todo list per layer and per object type."), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (statisticsPanel != null && statisticsPanel.isShowing()) {
+                statisticsPanel.refresh();
+                SwingUtilities.getWindowAncestor(statisticsPanel).toFront();
+                return;
+            }
+            // A component can only be in one dialog, so every dialog gets its own panel
+            statisticsPanel = new TodoStatisticsPanel(model);
+            new ExtendedDialog(MainApplication.getMainFrame(), tr("Todo list statistics"), new String[] {tr("Close")}, false)
+                    .setContent(statisticsPanel, false)
+                    .setButtonIcons("cancel")
+                    .showDialog();
+        }
+    }
+
+    private static class MetricsAction extends JosmAction {
+        @Serial
+        private static final long serialVersionUID = 8418707924541405377L;
+
+        MetricsAction() {
+            super(
+                    tr("Performance metrics"),
+                    "statusreport",
+                    tr("Show timings of the todo list operations, e.g. for a bug report."),
+                    Shortcut.registerShortcut("subwindow:todo:metrics",
+                            tr("Show timings of the todo list operations, e.g. for a bug report."), KeyEvent.CHAR_UNDEFINED, Shortcut.NONE),
+                    false
+            );
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            new ExtendedDialog(MainApplication.getMainFrame(), tr("Todo list performance metrics"), new String[] {tr("Close")}, false)
+                    .setContent(new TodoMetricsPanel(), false)
+                    .setButtonIcons("cancel")
+                    .showDialog();
         }
     }
 
     /**
-     * Updates the dialog title with a summary of the current todo list status
+     * Updates the dialog title with a summary of the current todo list status.
+     * <p>
+     * Model events are coalesced, so the title is refreshed at most once per frame.
      */
     class TitleUpdater implements ListDataListener {
+        private final Timer timer = new Timer(REFRESH_DELAY, e -> updateTitle());
+
+        TitleUpdater() {
+            timer.setRepeats(false);
+        }
+
+        private void schedule() {
+            if (!timer.isRunning()) {
+                timer.start();
+            }
+        }
+
         @Override
         public void contentsChanged(ListDataEvent e) {
-            updateTitle();
+            schedule();
         }
 
         @Override
         public void intervalAdded(ListDataEvent e) {
-            updateTitle();
+            schedule();
         }
 
         @Override
         public void intervalRemoved(ListDataEvent e) {
-            updateTitle();
+            schedule();
+        }
+    }
+
+    /**
+     * Switches the virtual mode when the list size crosses the threshold. This listener is added after the list view,
+     * so it is called before the list view lays out the changed list.
+     */
+    class VirtualModeUpdater implements ListDataListener {
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            updateVirtualMode();
+        }
+
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            updateVirtualMode();
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            updateVirtualMode();
         }
     }
 
@@ -669,8 +1694,16 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
     @Override
     public void destroy() {
         super.destroy();
-        MainApplication.getLayerManager().removeLayerChangeListener(this);
-        DatasetEventManager.getInstance().removeDatasetListener(model);
+        if (initialized) {
+            MainApplication.getLayerManager().removeLayerChangeListener(this);
+            DatasetEventManager.getInstance().removeDatasetListener(model);
+            setOverlayVisible(false);
+        }
+        reverifyTimer.stop();
+        reviewedStore.close();
+        if (TodoListService.getInstance().orElse(null) == service) {
+            TodoListService.setInstance(null);
+        }
     }
 
     @Override
@@ -680,11 +1713,39 @@ public class TodoDialog extends ToggleDialog implements PropertyChangeListener,
 
     @Override
     public void layerRemoving(LayerRemoveEvent e) {
+        if (e.getRemovedLayer() instanceof AbstractOsmDataLayer dataLayer && REMAP_MERGED.get()) {
+            // Merging layers removes the merged layer, keep its items on the copies of its objects
+            final var layerManager = MainApplication.getLayerManager();
+            final var candidates = Stream.concat(Stream.of(layerManager.getEditLayer(), layerManager.getActiveDataLayer()),
+                    layerManager.getLayersOfType(AbstractOsmDataLayer.class).stream())
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .toList();
+            final var target = model.findMergeTarget(dataLayer, candidates);
+            if (target != null && (TodoListCore.isMerged(dataLayer, target) || confirmRemap(dataLayer, target))) {
+                model.remapLayerItems(dataLayer, target);
+                return;
+            }
+        }
         if (e.getRemovedLayer() instanceof AbstractModifiableLayer modifiableLayer) {
             model.purgeLayerItems(modifiableLayer);
         }
     }
 
+    /**
+     * Ask if the items of a closed layer should move to another layer with the same objects, which may be another
+     * download of the same area
+     * @param source The closed layer
+     * @param target The layer with the same objects
+     * @return {@code true} to move the items
+     */
+    private static boolean confirmRemap(AbstractOsmDataLayer source, AbstractOsmDataLayer target) {
+        return ConditionalOptionPaneUtil.showConfirmationDialog("todo.remap-closed", MainApplication.getMainFrame(),
+                tr("Layer {0} was closed, and layer {1} has the same objects.\nMove the todo items to layer {1}?",
+                        source.getName(), target.getName()),
+                tr("Closed layer"), JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE, JOptionPane.YES_OPTION);
+    }
+
     @Override
     public void layerOrderChanged(LayerOrderChangeEvent e) {
         // Do nothing
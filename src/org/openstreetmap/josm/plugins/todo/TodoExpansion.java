@@ -0,0 +1,84 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.IRelation;
+import org.openstreetmap.josm.data.osm.IWay;
+import org.openstreetmap.josm.data.osm.OsmData;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
+
+/**
+ * Expands the objects that are added to the todo list to the members of relations and the nodes of ways.
+ * <p>
+ * Every object is expanded level by level up to the configured depth, with its own set of visited objects, so
+ * relations that contain themselves are only expanded once. The objects are expanded in parallel, and the results
+ * are merged in the order of the objects.
+ */
+final class TodoExpansion {
+    /** Add the members of relations */
+    static final BooleanProperty MEMBERS = new BooleanProperty("todo.expand.members", false);
+    /** Add the nodes of ways */
+    static final BooleanProperty NODES = new BooleanProperty("todo.expand.nodes", false);
+    /** The number of levels below the added objects that are expanded */
+    static final IntegerProperty DEPTH = new IntegerProperty("todo.expand.depth", 8);
+
+    private TodoExpansion() {
+        // Hide the default constructor
+    }
+
+    /**
+     * Expand objects, if expansion is enabled
+     * @param dataSet The data set of the objects, it is locked for reading while the objects are expanded
+     * @param primitives The objects
+     * @return The objects, each followed by its members and nodes, without duplicates
+     */
+    static List<IPrimitive> expand(OsmData<?, ?, ?, ?> dataSet, Collection<? extends IPrimitive> primitives) {
+        final var members = MEMBERS.get();
+        final var nodes = NODES.get();
+        final var depth = DEPTH.get();
+        if ((!members && !nodes) || depth <= 0)
+            return new ArrayList<>(primitives);
+        final var lock = dataSet.getReadLock();
+        lock.lock();
+        try (var timer = TodoMetrics.time("expand")) {
+            final var expanded = primitives.parallelStream()
+                    .map(primitive -> expand(primitive, depth, members, nodes))
+                    .collect(LinkedHashSet<IPrimitive>::new, LinkedHashSet::addAll, LinkedHashSet::addAll);
+            timer.items(expanded.size());
+            return new ArrayList<>(expanded);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Collection<IPrimitive> expand(IPrimitive root, int depth, boolean members, boolean nodes) {
+        final var visited = new LinkedHashSet<IPrimitive>();
+        visited.add(root);
+        List<IPrimitive> level = List.of(root);
+        for (var i = 0; i < depth && !level.isEmpty(); i++) {
+            final var next = new ArrayList<IPrimitive>();
+            for (var primitive : level) {
+                for (var child : children(primitive, members, nodes)) {
+                    if (!child.isIncomplete() && !child.isDeleted() && visited.add(child))
+                        next.add(child);
+                }
+            }
+            level = next;
+        }
+        return visited;
+    }
+
+    private static List<? extends IPrimitive> children(IPrimitive primitive, boolean members, boolean nodes) {
+        if (members && primitive instanceof IRelation<?> relation)
+            return relation.getMemberPrimitivesList();
+        if (nodes && primitive instanceof IWay<?> way)
+            return way.getNodes();
+        return List.of();
+    }
+}
@@ -0,0 +1,101 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
+
+/**
+ * Reads and writes todo items as a text file of object ids.
+ * <p>
+ * Every line holds one id like {@code n123}, {@code w456} or {@code r789}, followed by {@code done} for a done item.
+ * Empty lines and lines starting with {@code #} are ignored. New objects are not written, since their ids are only
+ * valid in one session.
+ */
+final class TodoIdFile {
+    private static final String DONE = "done";
+
+    /**
+     * The ids of a file
+     * @param todo The ids of the todo items
+     * @param done The ids of the done items
+     */
+    record Ids(List<PrimitiveId> todo, List<PrimitiveId> done) {
+    }
+
+    private TodoIdFile() {
+        // Hide the default constructor
+    }
+
+    /**
+     * Write items to a file
+     * @param file The file
+     * @param todo The todo items
+     * @param done The done items
+     * @throws IOException if the file could not be written
+     */
+    static void write(Path file, Collection<TodoListItem> todo, Collection<TodoListItem> done) throws IOException {
+        try (var writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (var item : todo) {
+                if (!item.primitive().isNew()) {
+                    writer.write(id(item));
+                    writer.newLine();
+                }
+            }
+            for (var item : done) {
+                if (!item.primitive().isNew()) {
+                    writer.write(id(item));
+                    writer.write(' ');
+                    writer.write(DONE);
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the ids of a file
+     * @param file The file
+     * @return The ids
+     * @throws IOException if the file could not be read or has an invalid line
+     */
+    static Ids read(Path file) throws IOException {
+        final var todo = new ArrayList<PrimitiveId>();
+        final var done = new ArrayList<PrimitiveId>();
+        var number = 0;
+        try (var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+                number++;
+                final var trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#"))
+                    continue;
+                final var fields = trimmed.split("\\s+");
+                try {
+                    final var id = SimplePrimitiveId.fromString(fields[0]);
+                    if (fields.length > 1 && DONE.equalsIgnoreCase(fields[1]))
+                        done.add(id);
+                    else
+                        todo.add(id);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(tr("Invalid id in line {0}: {1}", number, line), e);
+                }
+            }
+        }
+        return new Ids(todo, done);
+    }
+
+    private static String id(TodoListItem item) {
+        final var primitive = item.primitive();
+        return primitive.getType().getAPIName().substring(0, 1).toLowerCase(Locale.ROOT) + primitive.getUniqueId();
+    }
+}
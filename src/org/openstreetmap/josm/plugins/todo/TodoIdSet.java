@@ -0,0 +1,333 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
+import org.openstreetmap.josm.gui.layer.AbstractOsmDataLayer;
+
+/**
+ * An immutable set of objects, stored as compressed id bitmaps per layer and object type.
+ * <p>
+ * The ids of a bitmap are split into chunks of 65536 ids by their high bits. A chunk with few ids is a sorted array of
+ * the low bits, a chunk with many ids is a plain bitmap. Set operations work chunk by chunk, and on whole words for
+ * the bitmap chunks, so they do not depend on the number of ids in dense areas.
+ */
+final class TodoIdSet {
+    /** The largest number of ids stored as a sorted array in a chunk, at this size both forms use 8 KiB */
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1 << 10;
+
+    private record Key(AbstractOsmDataLayer layer, OsmPrimitiveType type) {
+    }
+
+    /**
+     * A set operation, applied to the words of bitmap chunks or to the values of array chunks
+     */
+    private enum Operation {
+        AND, AND_NOT;
+
+        long apply(long a, long b) {
+            return switch (this) {
+                case AND -> a & b;
+                case AND_NOT -> a & ~b;
+            };
+        }
+
+        boolean keep(boolean inA, boolean inB) {
+            return switch (this) {
+                case AND -> inA && inB;
+                case AND_NOT -> inA && !inB;
+            };
+        }
+    }
+
+    /** The chunks of each bitmap by the high bits of the ids. A chunk is a sorted {@code char[]} or a {@code long[]}. */
+    private final Map<Key, TreeMap<Long, Object>> bitmaps;
+
+    private TodoIdSet(Map<Key, TreeMap<Long, Object>> bitmaps) {
+        this.bitmaps = bitmaps;
+    }
+
+    /**
+     * Create a set from todo list items
+     * @param items The items
+     * @return The set of the objects of the items
+     */
+    static TodoIdSet of(Collection<TodoListItem> items) {
+        final var ids = new HashMap<Key, LongList>();
+        for (var item : items) {
+            ids.computeIfAbsent(key(item.layer(), item.primitive()), k -> new LongList()).add(item.primitive().getUniqueId());
+        }
+        return build(ids);
+    }
+
+    /**
+     * Create a set from objects of a layer
+     * @param layer The layer of the objects
+     * @param ids The ids of the objects, they do not need to exist in the layer
+     * @return The set of the objects
+     */
+    static TodoIdSet of(AbstractOsmDataLayer layer, Collection<? extends PrimitiveId> ids) {
+        final var lists = new HashMap<Key, LongList>();
+        for (var id : ids) {
+            lists.computeIfAbsent(key(layer, id), k -> new LongList()).add(id.getUniqueId());
+        }
+        return build(lists);
+    }
+
+    /**
+     * Check if the object of an item is in this set
+     * @param item The item
+     * @return {@code true} if the set contains the object
+     */
+    boolean contains(TodoListItem item) {
+        final var chunks = bitmaps.get(key(item.layer(), item.primitive()));
+        if (chunks == null)
+            return false;
+        final var id = item.primitive().getUniqueId();
+        final var chunk = chunks.get(id >> 16);
+        final var low = (char) id;
+        if (chunk instanceof char[] values)
+            return Arrays.binarySearch(values, low) >= 0;
+        return chunk instanceof long[] words && (words[low >>> 6] & (1L << low)) != 0;
+    }
+
+    /**
+     * Get the number of objects in the set
+     * @return The size of the set
+     */
+    int size() {
+        var size = 0;
+        for (var chunks : bitmaps.values()) {
+            for (var chunk : chunks.values()) {
+                size += cardinality(chunk);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the items for the objects of this set that exist in their layer
+     * @return The items, ordered by layer, type and id
+     */
+    List<TodoListItem> toItems() {
+        final var items = new ArrayList<TodoListItem>(size());
+        bitmaps.forEach((key, chunks) -> chunks.forEach((high, chunk) -> {
+            final var base = high << 16;
+            forEach(chunk, low -> {
+                final IPrimitive primitive = key.layer().getDataSet().getPrimitiveById(new SimplePrimitiveId(base | low, key.type()));
+                if (primitive != null)
+                    items.add(new TodoListItem(key.layer(), primitive));
+            });
+        }));
+        return items;
+    }
+
+    /**
+     * Get the objects that are in both sets
+     * @param other The other set
+     * @return The intersection
+     */
+    TodoIdSet and(TodoIdSet other) {
+        return combine(other, Operation.AND);
+    }
+
+    /**
+     * Get the objects of this set that are not in another set
+     * @param other The other set
+     * @return The difference
+     */
+    TodoIdSet andNot(TodoIdSet other) {
+        return combine(other, Operation.AND_NOT);
+    }
+
+    /**
+     * Combine two sets chunk by chunk. Both operations only keep objects of this set, so only the chunks of this set are
+     * visited, and chunks that are not in the other set are shared, not copied.
+     * @param other The other set
+     * @param operation The operation
+     * @return The new set
+     */
+    private TodoIdSet combine(TodoIdSet other, Operation operation) {
+        final var keepUnmatched = operation.keep(true, false);
+        final var result = new HashMap<Key, TreeMap<Long, Object>>();
+        bitmaps.forEach((key, left) -> {
+            final var right = other.bitmaps.get(key);
+            final var chunks = new TreeMap<Long, Object>();
+            left.forEach((high, a) -> {
+                final var b = right != null ? right.get(high) : null;
+                final var chunk = b == null ? (keepUnmatched ? a : null) : combine(a, b, operation);
+                if (chunk != null)
+                    chunks.put(high, chunk);
+            });
+            if (!chunks.isEmpty())
+                result.put(key, chunks);
+        });
+        return new TodoIdSet(result);
+    }
+
+    private static Object combine(Object a, Object b, Operation operation) {
+        if (a instanceof char[] leftValues && b instanceof char[] rightValues) {
+            return merge(leftValues, rightValues, operation);
+        }
+        final var left = words(a);
+        final var right = words(b);
+        final var words = new long[WORDS];
+        for (var i = 0; i < WORDS; i++) {
+            words[i] = operation.apply(left[i], right[i]);
+        }
+        return compact(words);
+    }
+
+    /**
+     * Combine two array chunks by merging them, so sparse chunks are never expanded to bitmaps
+     */
+    private static Object merge(char[] left, char[] right, Operation operation) {
+        final var values = new char[left.length + right.length];
+        var i = 0;
+        var j = 0;
+        var n = 0;
+        while (i < left.length || j < right.length) {
+            final int compare;
+            if (i == left.length)
+                compare = 1;
+            else if (j == right.length)
+                compare = -1;
+            else
+                compare = Character.compare(left[i], right[j]);
+            final var value = compare <= 0 ? left[i] : right[j];
+            if (operation.keep(compare <= 0, compare >= 0))
+                values[n++] = value;
+            if (compare <= 0)
+                i++;
+            if (compare >= 0)
+                j++;
+        }
+        if (n == 0)
+            return null;
+        return n > ARRAY_MAX ? words(Arrays.copyOf(values, n)) : Arrays.copyOf(values, n);
+    }
+
+    private static long[] words(Object chunk) {
+        if (chunk instanceof long[] words)
+            return words;
+        final var words = new long[WORDS];
+        for (var value : (char[]) chunk) {
+            words[value >>> 6] |= 1L << value;
+        }
+        return words;
+    }
+
+    /**
+     * Convert a bitmap chunk to the smaller form
+     * @return The chunk, or {@code null} if it is empty
+     */
+    private static Object compact(long[] words) {
+        var cardinality = 0;
+        for (var word : words) {
+            cardinality += Long.bitCount(word);
+        }
+        if (cardinality == 0)
+            return null;
+        if (cardinality > ARRAY_MAX)
+            return words;
+        final var values = new char[cardinality];
+        var n = 0;
+        for (var i = 0; i < WORDS; i++) {
+            for (var word = words[i]; word != 0; word &= word - 1) {
+                values[n++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+            }
+        }
+        return values;
+    }
+
+    private static int cardinality(Object chunk) {
+        if (chunk instanceof char[] values)
+            return values.length;
+        var cardinality = 0;
+        for (var word : (long[]) chunk) {
+            cardinality += Long.bitCount(word);
+        }
+        return cardinality;
+    }
+
+    private interface LowConsumer {
+        void accept(int low);
+    }
+
+    private static void forEach(Object chunk, LowConsumer consumer) {
+        if (chunk instanceof char[] values) {
+            for (var value : values) {
+                consumer.accept(value);
+            }
+        } else {
+            final var words = (long[]) chunk;
+            for (var i = 0; i < WORDS; i++) {
+                for (var word = words[i]; word != 0; word &= word - 1) {
+                    consumer.accept(i * 64 + Long.numberOfTrailingZeros(word));
+                }
+            }
+        }
+    }
+
+    private static TodoIdSet build(Map<Key, LongList> ids) {
+        final var result = new HashMap<Key, TreeMap<Long, Object>>(ids.size());
+        ids.forEach((key, list) -> {
+            final var values = list.toSortedArray();
+            final var chunks = new TreeMap<Long, Object>();
+            var start = 0;
+            while (start < values.length) {
+                final var high = values[start] >> 16;
+                var end = start;
+                while (end < values.length && values[end] >> 16 == high)
+                    end++;
+                final var chunk = new char[end - start];
+                var n = 0;
+                for (var i = start; i < end; i++) {
+                    // The ids are sorted, so duplicates are next to each other
+                    if (n == 0 || chunk[n - 1] != (char) values[i])
+                        chunk[n++] = (char) values[i];
+                }
+                chunks.put(high, n > ARRAY_MAX ? words(Arrays.copyOf(chunk, n)) : Arrays.copyOf(chunk, n));
+                start = end;
+            }
+            result.put(key, chunks);
+        });
+        return new TodoIdSet(result);
+    }
+
+    private static Key key(AbstractOsmDataLayer layer, PrimitiveId id) {
+        return new Key(layer, id.getType());
+    }
+
+    /**
+     * A growable list of primitive longs, to collect ids without boxing them
+     */
+    private static final class LongList {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        long[] toSortedArray() {
+            final var sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+}
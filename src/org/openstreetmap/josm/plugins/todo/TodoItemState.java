@@ -0,0 +1,35 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.openstreetmap.josm.tools.I18n.marktr;
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+/**
+ * The review state of a todo list item
+ */
+enum TodoItemState {
+    /** Not looked at yet */
+    TODO(marktr("Todo")),
+    /** Being worked on */
+    IN_PROGRESS(marktr("In progress")),
+    /** Passed over on purpose */
+    SKIPPED(marktr("Skipped")),
+    /** Cannot be resolved without a survey */
+    NEEDS_SURVEY(marktr("Needs survey")),
+    /** Done, the item is in the done list */
+    DONE(marktr("Done"));
+
+    private final String name;
+
+    TodoItemState(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the translated name of the state
+     * @return The name to show to the user
+     */
+    String getDisplayName() {
+        return tr(name);
+    }
+}
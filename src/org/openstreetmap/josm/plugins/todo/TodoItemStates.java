@@ -0,0 +1,224 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.util.BitSet;
+
+/**
+ * The review states of the items of a todo list, by list index.
+ * <p>
+ * The state of an item is packed into two bit planes, so changing the state of many items is a single operation on
+ * the words of the planes. Items in the {@link TodoItemState#TODO} state have no bits set, so the planes only grow with
+ * the items that were given another state. The items that are done are not in the todo list and are not stored here.
+ */
+final class TodoItemStates {
+    private static final TodoItemState[] STATES = TodoItemState.values();
+
+    private BitSet low = new BitSet();
+    private BitSet high = new BitSet();
+    /** The number of items in each state, not used for {@link TodoItemState#TODO} and {@link TodoItemState#DONE} */
+    private final int[] counts = new int[STATES.length];
+
+    /**
+     * Get the state of an item
+     * @param index The index of the item
+     * @return The state
+     */
+    TodoItemState get(int index) {
+        return STATES[(low.get(index) ? 1 : 0) | (high.get(index) ? 2 : 0)];
+    }
+
+    /**
+     * Get the states of several items, e.g. to restore them later with {@link #insert(BitSet, byte[])}
+     * @param indices The indices of the items
+     * @return The state ordinals in index order, or {@code null} if all items are in the todo state
+     */
+    byte[] get(BitSet indices) {
+        if (!low.intersects(indices) && !high.intersects(indices))
+            return null;
+        final var states = new byte[indices.cardinality()];
+        var item = 0;
+        for (var i = indices.nextSetBit(0); i >= 0; i = indices.nextSetBit(i + 1)) {
+            states[item++] = (byte) get(i).ordinal();
+        }
+        return states;
+    }
+
+    /**
+     * Get the number of items in a state
+     * @param state The state, not {@link TodoItemState#TODO} or {@link TodoItemState#DONE}
+     * @return The number of items
+     */
+    int count(TodoItemState state) {
+        return counts[state.ordinal()];
+    }
+
+    /**
+     * Get the number of items that are not in the todo state
+     * @return The number of items with a state set
+     */
+    int countStateSet() {
+        return counts[TodoItemState.IN_PROGRESS.ordinal()] + counts[TodoItemState.SKIPPED.ordinal()]
+                + counts[TodoItemState.NEEDS_SURVEY.ordinal()];
+    }
+
+    /**
+     * Get the indices of the items in a state
+     * @param state The state, not {@link TodoItemState#DONE}
+     * @param size The size of the todo list
+     * @return A new set of indices
+     */
+    BitSet indicesOf(TodoItemState state, int size) {
+        final BitSet result;
+        switch (state) {
+            case IN_PROGRESS -> {
+                result = (BitSet) low.clone();
+                result.andNot(high);
+            }
+            case SKIPPED -> {
+                result = (BitSet) high.clone();
+                result.andNot(low);
+            }
+            case NEEDS_SURVEY -> {
+                result = (BitSet) low.clone();
+                result.and(high);
+            }
+            case TODO -> {
+                result = new BitSet(size);
+                result.set(0, size);
+                result.andNot(low);
+                result.andNot(high);
+            }
+            default -> throw new IllegalArgumentException(state.name());
+        }
+        return result;
+    }
+
+    /**
+     * Set the state of several items
+     * @param indices The indices of the items
+     * @param state The new state, not {@link TodoItemState#DONE}
+     */
+    void set(BitSet indices, TodoItemState state) {
+        if (state == TodoItemState.DONE)
+            throw new IllegalArgumentException(state.name());
+        uncount(indices);
+        apply(low, indices, (state.ordinal() & 1) != 0);
+        apply(high, indices, (state.ordinal() & 2) != 0);
+        if (state != TodoItemState.TODO)
+            counts[state.ordinal()] += indices.cardinality();
+    }
+
+    /**
+     * Remove the states of items that were removed from the list
+     * @param indices The indices of the removed items, before the removal
+     */
+    void remove(BitSet indices) {
+        if (low.intersects(indices) || high.intersects(indices))
+            uncount(indices);
+        low = compact(low, indices);
+        high = compact(high, indices);
+    }
+
+    /**
+     * Add the states of items that were inserted into the list
+     * @param indices The indices of the inserted items, after the insertion
+     * @param states The state ordinals of the inserted items as returned by {@link #get(BitSet)}, may be {@code null}
+     */
+    void insert(BitSet indices, byte[] states) {
+        low = expand(low, indices);
+        high = expand(high, indices);
+        restore(indices, states);
+    }
+
+    /**
+     * Set the states of several items to states returned by {@link #get(BitSet)}
+     * @param indices The indices of the items
+     * @param states The state ordinals of the items, {@code null} if all are in the todo state
+     */
+    void restore(BitSet indices, byte[] states) {
+        set(indices, TodoItemState.TODO);
+        if (states == null)
+            return;
+        var item = 0;
+        for (var i = indices.nextSetBit(0); i >= 0; i = indices.nextSetBit(i + 1)) {
+            final var state = states[item++];
+            if (state != 0) {
+                low.set(i, (state & 1) != 0);
+                high.set(i, (state & 2) != 0);
+                counts[state]++;
+            }
+        }
+    }
+
+    /**
+     * Remove the states of the items at the end of the list
+     * @param from The first removed index
+     */
+    void truncate(int from) {
+        final var tail = new BitSet();
+        tail.set(from, Math.max(from, Math.max(low.length(), high.length())));
+        uncount(tail);
+        low.clear(from, Math.max(from, low.length()));
+        high.clear(from, Math.max(from, high.length()));
+    }
+
+    /**
+     * Remove the current states of items from the counts
+     * @param indices The indices of the items
+     */
+    private void uncount(BitSet indices) {
+        // Items after the last set bit of the planes are in the todo state, which is not counted
+        final var end = Math.max(low.length(), high.length());
+        for (var i = indices.nextSetBit(0); i >= 0 && i < end; i = indices.nextSetBit(i + 1)) {
+            final var state = (low.get(i) ? 1 : 0) | (high.get(i) ? 2 : 0);
+            if (state != 0)
+                counts[state]--;
+        }
+    }
+
+    private static void apply(BitSet plane, BitSet indices, boolean value) {
+        if (value)
+            plane.or(indices);
+        else
+            plane.andNot(indices);
+    }
+
+    /**
+     * Drop the removed indices from a plane, moving the following bits down
+     */
+    private static BitSet compact(BitSet plane, BitSet removed) {
+        if (plane.isEmpty())
+            return plane;
+        final var result = new BitSet();
+        var removedBefore = 0;
+        var next = removed.nextSetBit(0);
+        for (var i = plane.nextSetBit(0); i >= 0; i = plane.nextSetBit(i + 1)) {
+            while (next >= 0 && next < i) {
+                removedBefore++;
+                next = removed.nextSetBit(next + 1);
+            }
+            if (next != i)
+                result.set(i - removedBefore);
+        }
+        return result;
+    }
+
+    /**
+     * Insert clear bits at the inserted indices of a plane, moving the following bits up
+     */
+    private static BitSet expand(BitSet plane, BitSet inserted) {
+        if (plane.isEmpty())
+            return plane;
+        final var result = new BitSet();
+        var insertedBefore = 0;
+        var next = inserted.nextSetBit(0);
+        for (var i = plane.nextSetBit(0); i >= 0; i = plane.nextSetBit(i + 1)) {
+            while (next >= 0 && next <= i + insertedBefore) {
+                insertedBefore++;
+                next = inserted.nextSetBit(next + 1);
+            }
+            result.set(i + insertedBefore);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,2050 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.openstreetmap.josm.data.osm.DataSource;
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.OsmData;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListener;
+import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesAddedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesRemovedEvent;
+import org.openstreetmap.josm.data.osm.event.RelationMembersChangedEvent;
+import org.openstreetmap.josm.data.osm.event.TagsChangedEvent;
+import org.openstreetmap.josm.data.osm.event.WayNodesChangedEvent;
+import org.openstreetmap.josm.data.validation.Severity;
+import org.openstreetmap.josm.gui.layer.AbstractModifiableLayer;
+import org.openstreetmap.josm.gui.layer.AbstractOsmDataLayer;
+
+/**
+ * The todo list items, without any dependency on Swing.
+ * <p>
+ * The core also maintains a list of already completed items
+ * <p>
+ * The core can hold several named lists, of which one is shown at a time. Every list has its own geometry, states,
+ * history and priority queue, so the memory of a list grows with its number of items.
+ * <p>
+ * Changes are reported to {@link Listener}s, the selection is kept in a {@link TodoListSelection}. This makes the core
+ * usable without a GUI, e.g. in scripts and benchmarks. {@link TodoListModel} adapts it to a Swing list model.
+ */
+public class TodoListCore implements DataSetListener {
+
+    /**
+     * Notified when the todo list changes, with the same meaning as the Swing list events
+     */
+    public interface Listener {
+        /**
+         * Items were inserted
+         * @param from The first inserted index
+         * @param to The last inserted index
+         */
+        void intervalAdded(int from, int to);
+
+        /**
+         * Items were removed
+         * @param from The first removed index, before the removal
+         * @param to The last removed index, before the removal
+         */
+        void intervalRemoved(int from, int to);
+
+        /**
+         * Items were changed, or the list was changed in a way that is not described by the other events
+         * @param from The first changed index
+         * @param to The last changed index
+         */
+        void contentsChanged(int from, int to);
+    }
+
+    /** The maximum number of list events fired for a single change before falling back to one event for the whole list */
+    private static final int MAX_PRECISE_EVENTS = 64;
+    /** The number of objects of a removed layer that are compared with another layer to detect a merge */
+    private static final int MERGE_SAMPLE = 64;
+
+    private List<TodoListItem> todoList = new ArrayList<>();
+    private Collection<TodoListItem> doneList = new HashSet<>();
+    private final TodoListSelection selectionModel;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private TodoListStatistics statistics = new TodoListStatistics();
+    private TodoListHistory history = new TodoListHistory(this::fireHistoryChanged);
+    private TodoListGeometry geometry = new TodoListGeometry();
+    private TodoItemStates states = new TodoItemStates();
+    private TodoReviewedStore reviewedStore;
+    private final TodoSelectionCounts selectionCounts = new TodoSelectionCounts(this::getMembership);
+    private final TodoPriority priority = new TodoPriority();
+    /** The todo items by priority, only kept while working by priority */
+    private boolean priorityEnabled;
+    /** The priority queue of the current list, {@code null} if the items are not ordered by priority */
+    private TodoPriorityQueue priorityQueue;
+    private final CopyOnWriteArrayList<Runnable> historyListeners = new CopyOnWriteArrayList<>();
+    /** Done items that were changed in the data set since they were last verified */
+    private final Set<TodoListItem> changedDone = new HashSet<>();
+    private final CopyOnWriteArrayList<Runnable> changedDoneListeners = new CopyOnWriteArrayList<>();
+    /** All lists by name, in creation order. The state of the current list is only saved when switching away from it. */
+    private final Map<String, ListState> lists = new LinkedHashMap<>();
+    private String currentList = tr("Default");
+    /** When positive, every change fires a single list event */
+    private int batchDepth;
+
+    /**
+     * The state of a todo list while another list is shown
+     */
+    private static final class ListState {
+        private List<TodoListItem> todoList = new ArrayList<>();
+        private Collection<TodoListItem> doneList = new HashSet<>();
+        private TodoListStatistics statistics = new TodoListStatistics();
+        private TodoListHistory history;
+        private TodoListGeometry geometry = new TodoListGeometry();
+        private TodoItemStates states = new TodoItemStates();
+        /** The priority queue, {@code null} if it was not built yet or if it has to be built again */
+        private TodoPriorityQueue priorityQueue;
+        private int selection = -1;
+        /** The items of primitives that were deleted while the list was not shown */
+        private final Set<TodoListItem> removed = new HashSet<>();
+
+        ListState(TodoListHistory history) {
+            this.history = history;
+        }
+    }
+
+    /**
+     * Create a new core
+     * @param selectionModel The selection to use
+     */
+    public TodoListCore(TodoListSelection selectionModel) {
+        this.selectionModel = selectionModel;
+        this.lists.put(currentList, new ListState(history));
+    }
+
+    /**
+     * Get the names of all lists
+     * @return The list names, in creation order
+     */
+    List<String> getListNames() {
+        return new ArrayList<>(lists.keySet());
+    }
+
+    /**
+     * Get the name of the list that is currently shown
+     * @return The list name
+     */
+    String getCurrentList() {
+        return currentList;
+    }
+
+    /**
+     * Add a new, empty list
+     * @param name The name of the list
+     * @return {@code true} if the list was added, {@code false} if the name is empty or already used
+     */
+    boolean addList(String name) {
+        if (name == null || name.isBlank() || lists.containsKey(name))
+            return false;
+        lists.put(name, new ListState(new TodoListHistory(this::fireHistoryChanged)));
+        return true;
+    }
+
+    /**
+     * Remove a list. The last list cannot be removed.
+     * @param name The name of the list
+     * @return {@code true} if the list was removed
+     */
+    boolean removeList(String name) {
+        if (!lists.containsKey(name) || lists.size() == 1)
+            return false;
+        if (name.equals(currentList)) {
+            switchList(lists.keySet().stream().filter(n -> !n.equals(name)).findFirst().orElseThrow());
+        }
+        lists.remove(name);
+        return true;
+    }
+
+    /**
+     * Show another list. This only swaps the list state, the items are not copied. Only the selected objects of the
+     * data set are classified again, because their membership depends on the list.
+     * @param name The name of the list to show
+     */
+    void switchList(String name) {
+        final var target = lists.get(name);
+        if (target == null || name.equals(currentList))
+            return;
+        try (var timer = TodoMetrics.time("model.switchList")) {
+            final var oldSize = getSize();
+            final var current = lists.get(currentList);
+            current.todoList = todoList;
+            current.doneList = doneList;
+            current.statistics = statistics;
+            current.history = history;
+            current.geometry = geometry;
+            current.states = states;
+            current.priorityQueue = priorityQueue;
+            current.selection = selectionModel.getMinSelectionIndex();
+
+            currentList = name;
+            todoList = target.todoList;
+            doneList = target.doneList;
+            statistics = target.statistics;
+            history = target.history;
+            geometry = target.geometry;
+            states = target.states;
+            priorityQueue = target.priorityQueue;
+            target.priorityQueue = null;
+            if (priorityEnabled && priorityQueue == null)
+                priorityQueue = TodoPriorityQueue.of(todoList, priority::score);
+            selectionCounts.reset();
+            timer.items(getSize());
+
+            selectionModel.clearSelection();
+            final var newSize = getSize();
+            if (newSize < oldSize)
+                fireIntervalRemoved(newSize, oldSize - 1);
+            else if (newSize > oldSize)
+                fireIntervalAdded(oldSize, newSize - 1);
+            if (Math.min(oldSize, newSize) > 0)
+                fireContentsChanged(0, Math.min(oldSize, newSize) - 1);
+            if (!target.removed.isEmpty()) {
+                final var removed = new ArrayList<>(target.removed);
+                target.removed.clear();
+                if (remove(removed) != null)
+                    history.clear();
+            }
+            if (target.selection >= 0 && target.selection < getSize())
+                selectionModel.setSelectionInterval(target.selection, target.selection);
+            fireHistoryChanged();
+        }
+    }
+
+    /**
+     * Get the lists that are not shown
+     * @return The states of the other lists
+     */
+    private List<ListState> getInactiveLists() {
+        return lists.entrySet().stream()
+                .filter(entry -> !entry.getKey().equals(currentList))
+                .map(Map.Entry::getValue)
+                .toList();
+    }
+
+    /**
+     * Add a listener that is called when the undo/redo history of the current list changes
+     * @param listener The listener to add
+     */
+    void addHistoryListener(Runnable listener) {
+        historyListeners.addIfAbsent(listener);
+    }
+
+    private void fireHistoryChanged() {
+        historyListeners.forEach(Runnable::run);
+    }
+
+    /**
+     * Add a listener that is called when done items are changed in the data set
+     * @param listener The listener to add
+     */
+    void addChangedDoneListener(Runnable listener) {
+        changedDoneListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Get and forget the done items that were changed in the data set since the last call
+     * @return The changed items that are still done in the current list
+     */
+    List<TodoListItem> pollChangedDone() {
+        final var items = changedDone.stream().filter(doneList::contains).toList();
+        changedDone.removeAll(items);
+        return items;
+    }
+
+    /**
+     * Add a listener that is notified when the todo list changes
+     * @param listener The listener to add
+     */
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Remove a listener
+     * @param listener The listener to remove
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    protected void fireIntervalAdded(int from, int to) {
+        listeners.forEach(listener -> listener.intervalAdded(from, to));
+    }
+
+    protected void fireIntervalRemoved(int from, int to) {
+        listeners.forEach(listener -> listener.intervalRemoved(from, to));
+    }
+
+    protected void fireContentsChanged(int from, int to) {
+        listeners.forEach(listener -> listener.contentsChanged(from, to));
+    }
+
+    public TodoListItem getElementAt(int index) {
+        return todoList.get(index);
+    }
+
+    public int getSize() {
+        return todoList.size();
+    }
+
+    boolean isSelectionEmpty() {
+        return selectionModel.isSelectionEmpty();
+    }
+
+    int getDoneSize() {
+        return doneList.size();
+    }
+
+    TodoListStatistics getStatistics() {
+        return statistics;
+    }
+
+    TodoListGeometry getGeometry() {
+        return geometry;
+    }
+
+    private void itemAdded(TodoListItem item, boolean done) {
+        statistics.added(item, done);
+        geometry.added(item, done);
+        selectionCounts.changed(item.primitive());
+        if (priorityQueue != null && !done)
+            priorityQueue.add(item, priority.score(item));
+    }
+
+    private void itemRemoved(TodoListItem item, boolean done) {
+        statistics.removed(item, done);
+        geometry.removed(item);
+        selectionCounts.changed(item.primitive());
+        priority.forget(item);
+        if (priorityQueue != null)
+            priorityQueue.remove(item);
+    }
+
+    private void itemMarked(TodoListItem item) {
+        statistics.marked(item);
+        setDone(item, true);
+    }
+
+    private void itemRemarked(TodoListItem item) {
+        statistics.remarked(item);
+        setDone(item, true);
+    }
+
+    private void itemUnmarked(TodoListItem item) {
+        statistics.unmarked(item);
+        setDone(item, false);
+    }
+
+    /**
+     * Grow the store of the reviewed objects once before many items are marked
+     * @param count The number of items that are marked
+     */
+    private void reserveReviewed(int count) {
+        if (reviewedStore != null)
+            reviewedStore.reserve(count);
+    }
+
+    private void setDone(TodoListItem item, boolean done) {
+        geometry.setDone(item, done);
+        selectionCounts.changed(item.primitive());
+        if (priorityQueue != null) {
+            if (done)
+                priorityQueue.remove(item);
+            else
+                priorityQueue.add(item, priority.score(item));
+        }
+        if (reviewedStore != null) {
+            if (done)
+                reviewedStore.add(item.primitive());
+            else
+                reviewedStore.remove(item.primitive());
+        }
+    }
+
+    /**
+     * Get the counts of the objects selected on the map by where they are in the model
+     * @return The counts, they are only updated while they are registered as selection listener
+     */
+    TodoSelectionCounts getSelectionCounts() {
+        return selectionCounts;
+    }
+
+    private TodoSelectionCounts.Membership getMembership(IPrimitive primitive) {
+        final var items = geometry.getItems(primitive);
+        if (items.isEmpty())
+            return TodoSelectionCounts.Membership.NEW;
+        for (var item : items) {
+            if (!geometry.isDone(item))
+                return TodoSelectionCounts.Membership.TODO;
+        }
+        return TodoSelectionCounts.Membership.DONE;
+    }
+
+    /**
+     * Set the store that remembers the objects that were marked as done
+     * @param reviewedStore The store, or {@code null} to not remember them
+     */
+    void setReviewedStore(TodoReviewedStore reviewedStore) {
+        this.reviewedStore = reviewedStore;
+    }
+
+    /**
+     * Drop the items whose objects were already marked as done in their current version, if this is enabled
+     * @param items The items to filter
+     * @return The items that were not reviewed yet
+     */
+    Collection<TodoListItem> withoutReviewed(Collection<TodoListItem> items) {
+        if (reviewedStore == null || !TodoReviewedStore.SKIP_REVIEWED.get())
+            return items;
+        try (var timer = TodoMetrics.time("model.withoutReviewed")) {
+            timer.items(items.size());
+            return items.stream().filter(item -> !reviewedStore.contains(item.primitive())).toList();
+        }
+    }
+
+    /**
+     * Get the selected items.
+     * <p>
+     * This reads the interval from the first to the last selected index, so the work is proportional to that interval
+     * and not to the list, but selecting the whole list still makes this a pass over the whole list. Use
+     * {@link #getSelectedIndices()} or {@link #markSelectedItems()} when the items themselves are not needed.
+     * @return The selected items, in list order
+     */
+    synchronized List<TodoListItem> getSelected() {
+        return getSelectedIndices().stream().mapToObj(todoList::get).toList();
+    }
+
+    /**
+     * Get the indices of the selected items. Like {@link #getSelected()}, this reads the selected interval.
+     * @return The selected indices
+     */
+    synchronized BitSet getSelectedIndices() {
+        final var indices = new BitSet();
+        final var max = Math.min(selectionModel.getMaxSelectionIndex(), getSize() - 1);
+        for (var i = selectionModel.getMinSelectionIndex(); i >= 0 && i <= max; i++) {
+            if (selectionModel.isSelectedIndex(i))
+                indices.set(i);
+        }
+        return indices;
+    }
+
+    /**
+     * Get the indices of items in the todo list. The indices are kept by the geometry, so this does not scan the list
+     * unless it was shifted since the last lookup, see {@link TodoListGeometry#indexOf(TodoListItem, List)}.
+     * @param items The items
+     * @return The indices of the items that are in the todo list
+     */
+    private BitSet indicesOf(Collection<? extends TodoListItem> items) {
+        final var indices = new BitSet();
+        for (var item : items) {
+            final var i = geometry.indexOf(item, todoList);
+            if (i >= 0)
+                indices.set(i);
+        }
+        return indices;
+    }
+
+    /**
+     * Get the todo and done items of primitives, looked up in the geometry of the current list
+     * @param primitives The primitives
+     * @param dataSet The data set of the primitives. Removed primitives no longer know their data set.
+     * @return The items of the primitives in layers of the data set
+     */
+    Collection<TodoListItem> getItemsForPrimitives(Collection<? extends IPrimitive> primitives,
+            OsmData<?, ?, ?, ?> dataSet) {
+        try (var timer = TodoMetrics.time("model.getItemsForPrimitives")) {
+            timer.items(primitives.size());
+            final List<TodoListItem> items = new ArrayList<>();
+            for (var primitive : primitives) {
+                for (var item : geometry.getItems(primitive)) {
+                    if (dataSet.equals(item.layer().getDataSet()))
+                        items.add(item);
+                }
+            }
+            return items;
+        }
+    }
+
+    List<TodoListItem> getTodoList() {
+        return todoList;
+    }
+
+    Collection<TodoListItem> getDoneList() {
+        return Collections.unmodifiableCollection(doneList);
+    }
+
+    /**
+     * Increment the selection
+     */
+    void incrementSelection() {
+        int idx;
+        if (getSize() == 0)
+            return;
+        if (priorityQueue != null) {
+            if (!selectionModel.isSelectionEmpty() && selectionModel.getMinSelectionIndex() < getSize())
+                priorityQueue.pass(todoList.get(selectionModel.getMinSelectionIndex()));
+            selectFirstByPriority();
+            return;
+        }
+        if (selectionModel.isSelectionEmpty())
+            idx = 0;
+        else
+            idx = selectionModel.getMinSelectionIndex() + 1;
+
+        if (idx > getSize() - 1)
+            idx = getSize() - 1;
+
+        selectionModel.setSelectionInterval(idx, idx);
+    }
+
+    /**
+     * Work on the todo items by priority. Pass and mark then select the todo item with the highest priority.
+     * @param enabled {@code true} to order by priority, {@code false} to use the list order
+     */
+    void setPriorityEnabled(boolean enabled) {
+        priorityEnabled = enabled;
+        // The queues of the other lists are built again when they are shown, with the reloaded priorities
+        lists.values().forEach(state -> state.priorityQueue = null);
+        if (!enabled) {
+            priorityQueue = null;
+            return;
+        }
+        try (var timer = TodoMetrics.time("model.priority")) {
+            timer.items(getSize());
+            priority.reload();
+            priorityQueue = TodoPriorityQueue.of(todoList, priority::score);
+        }
+    }
+
+    /**
+     * Remember the validator severity of items, for the priority of the items
+     * @param item The item
+     * @param severity The most severe issue of the item
+     */
+    void setSeverity(TodoListItem item, Severity severity) {
+        priority.setSeverity(item, severity);
+        if (priorityQueue != null)
+            priorityQueue.update(item, priority.score(item));
+    }
+
+    /**
+     * Select the todo item with the highest priority. Its list row is looked up in the indices of the geometry.
+     */
+    private void selectFirstByPriority() {
+        final var first = priorityQueue.peek();
+        final var i = first != null ? geometry.indexOf(first, todoList) : -1;
+        if (i >= 0)
+            selectionModel.setSelectionInterval(i, i);
+    }
+
+    /**
+     * Add items to the current list
+     * @param newItems The items to add
+     */
+    void addItems(Collection<TodoListItem> newItems) {
+        if (newItems == null || newItems.isEmpty())
+            return;
+        final var items = new LinkedHashSet<>(newItems);
+        final List<TodoListItem> unmarked = new ArrayList<>();
+        for (TodoListItem item : items) {
+            if (doneList.remove(item)) {
+                itemRemoved(item, true);
+                unmarked.add(item);
+            }
+        }
+        final var size = getSize();
+        if (size == 0) {
+            todoList.addAll(items);
+            todoList.forEach(item -> itemAdded(item, false));
+            fireIntervalAdded(0, getSize() - 1);
+            selectionModel.setSelectionInterval(0, 0);
+        } else {
+            final List<TodoListItem> tempList = new ArrayList<>(items.size());
+            for (TodoListItem item: items) {
+                // The done items were removed above, so the geometry only contains items of the todo list
+                if (!geometry.contains(item)) {
+                    tempList.add(item);
+                    itemAdded(item, false);
+                }
+            }
+            todoList.addAll(tempList);
+            fireIntervalAdded(size, getSize() - 1);
+        }
+        if (getSize() > size || !unmarked.isEmpty()) {
+            history.record(new AddDelta(size, getSize(), unmarked.toArray(new TodoListItem[0])));
+        }
+    }
+
+    /**
+     * Remove items that are in a specified layer
+     * @param layer The layer to filter on
+     * @return {@code true} if the list items changed
+     */
+    boolean purgeLayerItems(AbstractModifiableLayer layer) {
+        final var indices = indicesInLayer(todoList, layer);
+        boolean changed = !indices.isEmpty();
+        if (changed) {
+            for (var item : removeAt(indices)) {
+                itemRemoved(item, false);
+            }
+            selectionModel.setSelectionInterval(0, 0);
+        }
+        changed |= doneList.removeIf(i -> removeIfInLayer(layer, i, true));
+        for (var state : getInactiveLists()) {
+            final var purgedIndices = indicesInLayer(state.todoList, layer);
+            if (!purgedIndices.isEmpty()) {
+                state.todoList.removeIf(i -> purgeIfInLayer(state, layer, i, false));
+                state.states.remove(purgedIndices);
+                state.geometry.invalidateIndices(purgedIndices.nextSetBit(0));
+            }
+            final var purged = !purgedIndices.isEmpty()
+                    | state.doneList.removeIf(i -> purgeIfInLayer(state, layer, i, true));
+            state.removed.removeIf(i -> layer.equals(i.layer()));
+            if (purged)
+                state.history.clear();
+            changed |= purged;
+        }
+        if (changed) {
+            // The history refers to list indices and items of the removed layer
+            history.clear();
+        }
+        return changed;
+    }
+
+    private static BitSet indicesInLayer(List<TodoListItem> list, AbstractModifiableLayer layer) {
+        final var indices = new BitSet();
+        for (var i = 0; i < list.size(); i++) {
+            if (layer.equals(list.get(i).layer()))
+                indices.set(i);
+        }
+        return indices;
+    }
+
+    private static boolean purgeIfInLayer(ListState state, AbstractModifiableLayer layer, TodoListItem item, boolean done) {
+        if (layer.equals(item.layer())) {
+            state.statistics.removed(item, done);
+            state.geometry.removed(item);
+            if (state.priorityQueue != null && !done)
+                state.priorityQueue.remove(item);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean removeIfInLayer(AbstractModifiableLayer layer, TodoListItem item, boolean done) {
+        if (layer.equals(item.layer())) {
+            itemRemoved(item, done);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Find the layer that the objects of a layer were merged into.
+     * <p>
+     * The layer is a merge target if it contains an equal copy of every sampled object of the source layer. New
+     * objects get new ids when they are merged, so they are not sampled. The sample is taken from all lists, since the
+     * items of the layer may only be in lists that are not shown.
+     * @param source The layer that is removed
+     * @param candidates The other layers, in order of preference
+     * @return The merge target, or {@code null} if there is none
+     */
+    AbstractOsmDataLayer findMergeTarget(AbstractOsmDataLayer source, Collection<? extends AbstractOsmDataLayer> candidates) {
+        final var inactive = getInactiveLists().stream()
+                .flatMap(state -> Stream.concat(state.todoList.stream(), state.doneList.stream()));
+        final var sample = Stream.concat(Stream.concat(todoList.stream(), doneList.stream()), inactive)
+                .filter(item -> item.layer() == source && !item.primitive().isNew())
+                .limit(MERGE_SAMPLE)
+                .toList();
+        if (sample.isEmpty())
+            return null;
+        for (var candidate : candidates) {
+            if (candidate != source && sample.stream().allMatch(item -> isCopy(item.primitive(), candidate))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if a layer was merged into another layer, and not only closed while another layer has the same objects.
+     * Merging adds the data sources of the merged layer to the other layer, so they are the same instances.
+     * @param source The layer that is removed
+     * @param target The merge target found by {@link #findMergeTarget}
+     * @return {@code true} if the other layer has all data sources of the layer
+     */
+    static boolean isMerged(AbstractOsmDataLayer source, AbstractOsmDataLayer target) {
+        final var sources = source.getDataSet().getDataSources();
+        if (sources.isEmpty())
+            return false;
+        final var targetSources = Collections.newSetFromMap(new IdentityHashMap<DataSource, Boolean>());
+        targetSources.addAll(target.getDataSet().getDataSources());
+        return targetSources.containsAll(sources);
+    }
+
+    private static boolean isCopy(IPrimitive primitive, AbstractOsmDataLayer layer) {
+        final IPrimitive copy = layer.getDataSet().getPrimitiveById(primitive.getPrimitiveId());
+        if (copy == null || copy.getVersion() != primitive.getVersion())
+            return false;
+        if (primitive instanceof OsmPrimitive osmPrimitive && copy instanceof OsmPrimitive osmCopy)
+            return osmPrimitive.hasEqualSemanticAttributes(osmCopy);
+        return copy.getKeys().equals(primitive.getKeys());
+    }
+
+    /**
+     * Move the items of a layer that was merged into another layer to the objects with the same ids in the other layer,
+     * in all lists. Done items stay done. Items without an object in the other layer, e.g. of new objects, and items
+     * whose object is already in the list are removed.
+     * @param source The merged layer
+     * @param target The layer the objects were merged into
+     * @return {@code true} if the list items changed
+     */
+    boolean remapLayerItems(AbstractOsmDataLayer source, AbstractOsmDataLayer target) {
+        try (var timer = TodoMetrics.time("model.remapLayerItems")) {
+            final var lost = remap(todoList, doneList, statistics, geometry, source, target);
+            var changed = lost != null;
+            if (changed) {
+                timer.items(getSize() + getDoneSize());
+                for (var item : removeAt(lost)) {
+                    itemRemoved(item, false);
+                }
+                if (priorityQueue != null)
+                    priorityQueue = TodoPriorityQueue.of(todoList, priority::score);
+                if (!lost.isEmpty())
+                    selectionModel.setSelectionInterval(0, 0);
+                if (!todoList.isEmpty())
+                    fireContentsChanged(0, todoList.size() - 1);
+            }
+            for (var state : getInactiveLists()) {
+                final var purgedIndices = remap(state.todoList, state.doneList, state.statistics, state.geometry, source, target);
+                if (purgedIndices != null) {
+                    final var kept = new ArrayList<TodoListItem>(state.todoList.size() - purgedIndices.cardinality());
+                    for (var i = 0; i < state.todoList.size(); i++) {
+                        if (purgedIndices.get(i)) {
+                            purgeIfInLayer(state, source, state.todoList.get(i), false);
+                        } else {
+                            kept.add(state.todoList.get(i));
+                        }
+                    }
+                    state.todoList.clear();
+                    state.todoList.addAll(kept);
+                    state.states.remove(purgedIndices);
+                    state.geometry.invalidateIndices(0);
+                    state.priorityQueue = null;
+                    state.history.clear();
+                    changed = true;
+                }
+                state.removed.removeIf(i -> source.equals(i.layer()));
+            }
+            if (changed) {
+                // The history refers to the items of the merged layer
+                history.clear();
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * Replace the items of a layer in a list in place, and collect the todo items that cannot be replaced
+     * @return The indices of the todo items to remove, or {@code null} if the list has no items of the source layer
+     */
+    private BitSet remap(List<TodoListItem> todo, Collection<TodoListItem> done, TodoListStatistics listStatistics,
+            TodoListGeometry listGeometry, AbstractOsmDataLayer source, AbstractOsmDataLayer target) {
+        final var dataSet = target.getDataSet();
+        final var lost = new BitSet();
+        var found = false;
+        for (var i = 0; i < todo.size(); i++) {
+            final var item = todo.get(i);
+            if (item.layer() != source)
+                continue;
+            found = true;
+            final var remapped = remap(item, dataSet, target, listGeometry);
+            if (remapped == null) {
+                lost.set(i);
+            } else {
+                listStatistics.removed(item, false);
+                listGeometry.removed(item);
+                todo.set(i, remapped);
+                listStatistics.added(remapped, false);
+                listGeometry.added(remapped, false);
+                listGeometry.invalidateIndices(i);
+                selectionCounts.changed(remapped.primitive());
+            }
+        }
+        final var remappedDone = new ArrayList<TodoListItem>();
+        found |= done.removeIf(item -> {
+            if (item.layer() != source)
+                return false;
+            listStatistics.removed(item, true);
+            listGeometry.removed(item);
+            final var remapped = remap(item, dataSet, target, listGeometry);
+            if (remapped != null)
+                remappedDone.add(remapped);
+            return true;
+        });
+        for (var item : remappedDone) {
+            if (done.add(item)) {
+                listStatistics.added(item, true);
+                listGeometry.added(item, true);
+                selectionCounts.changed(item.primitive());
+            }
+        }
+        return found ? lost : null;
+    }
+
+    private TodoListItem remap(TodoListItem item, OsmData<?, ?, ?, ?> dataSet, AbstractOsmDataLayer target,
+            TodoListGeometry listGeometry) {
+        if (item.primitive().isNew())
+            return null;
+        final IPrimitive primitive = dataSet.getPrimitiveById(item.primitive().getPrimitiveId());
+        if (primitive == null)
+            return null;
+        final var remapped = new TodoListItem(target, primitive);
+        return listGeometry.contains(remapped) ? null : remapped;
+    }
+
+    public void markSelected() {
+        if (selectionModel.isSelectionEmpty() || getSize() == 0)
+            return;
+        int sel = selectionModel.getMinSelectionIndex();
+        if (sel >= todoList.size())
+            return;
+        final var indices = new BitSet();
+        indices.set(sel);
+        final var itemStates = states.get(indices);
+        final var item = removeAt(indices)[0];
+        doneList.add(item);
+        itemMarked(item);
+        history.record(new MarkDelta(indices, new TodoListItem[] {item}, itemStates));
+        if (sel == getSize())
+            sel = 0;
+        if (priorityQueue != null)
+            selectFirstByPriority();
+        else
+            selectionModel.setSelectionInterval(sel, sel);
+    }
+
+    synchronized void setSelected(Collection<TodoListItem> sel) {
+        selectionModel.setSelectedIndices(sel != null ? indicesOf(sel).stream() : IntStream.empty());
+    }
+
+    /**
+     * Mark all as done
+     */
+    void markAll() {
+        if (getSize() == 0)
+            return;
+        final var delta = new MarkAllDelta();
+        delta.apply();
+        statistics.markedAll();
+        history.record(delta);
+    }
+
+    /**
+     * Remove the specified items
+     * @param items The items to remove
+     */
+    void removeItems(Collection<TodoListItem> items) {
+        final var delta = remove(items);
+        if (delta != null) {
+            history.record(delta);
+        }
+    }
+
+    /**
+     * Remove the specified items without recording the change
+     * @param items The items to remove
+     * @return The change, or {@code null} if nothing was removed
+     */
+    private RemoveDelta remove(Collection<TodoListItem> items) {
+        if (items == null || items.isEmpty())
+            return null;
+
+        final var toRemove = items instanceof Set ? items : new HashSet<>(items);
+        final var indices = indicesOf(toRemove);
+        final List<TodoListItem> removedDone = new ArrayList<>();
+        for (TodoListItem item : toRemove) {
+            if (doneList.remove(item)) {
+                itemRemoved(item, true);
+                removedDone.add(item);
+            }
+        }
+        final var itemStates = states.get(indices);
+        final var removedTodo = removeAt(indices);
+        for (TodoListItem item : removedTodo) {
+            itemRemoved(item, false);
+        }
+        if (removedTodo.length == 0 && removedDone.isEmpty())
+            return null;
+        return new RemoveDelta(indices, removedTodo, removedDone.toArray(new TodoListItem[0]), itemStates);
+    }
+
+    /**
+     * Mark items as done
+     * @param items The items that are done
+     */
+    void markItems(Collection<TodoListItem> items) {
+        if (items == null || items.isEmpty() || getSize() == 0)
+            return;
+        markAt(indicesOf(items));
+    }
+
+    /**
+     * Mark the selected items as done. Unlike {@code markItems(getSelected())}, this does not look up the items.
+     */
+    void markSelectedItems() {
+        markAt(getSelectedIndices());
+    }
+
+    /**
+     * Mark the items at the given indices as done
+     * @param indices The indices of the items
+     */
+    private void markAt(BitSet indices) {
+        if (indices.isEmpty())
+            return;
+        int sel = selectionModel.getMinSelectionIndex();
+
+        this.selectionModel.setValueIsAdjusting(true);
+        if (sel > 0)
+            sel -= indices.get(0, sel).cardinality();
+        final var itemStates = states.get(indices);
+        final var marked = removeAt(indices);
+        reserveReviewed(marked.length);
+        for (TodoListItem item : marked) {
+            doneList.add(item);
+            itemMarked(item);
+        }
+        history.record(new MarkDelta(indices, marked, itemStates));
+        if (sel >= getSize() || sel < 0)
+            sel = 0;
+        this.selectionModel.setValueIsAdjusting(false);
+        if (priorityQueue != null)
+            selectFirstByPriority();
+        else
+            selectionModel.setSelectionInterval(sel, sel);
+    }
+
+    /**
+     * Mark the items of objects as done
+     * <p>
+     * The objects are looked up in the index of the items by object, or the todo list is checked against the objects,
+     * whichever is smaller, so no items are created for objects that are not in the list.
+     * @param layer The layer of the objects
+     * @param primitives The objects that are done
+     */
+    void markPrimitives(AbstractOsmDataLayer layer, Collection<? extends IPrimitive> primitives) {
+        try (var timer = TodoMetrics.time("model.markPrimitives")) {
+            timer.items(primitives.size());
+            final var hits = new HashSet<TodoListItem>();
+            if (primitives.size() <= todoList.size()) {
+                for (var primitive : primitives) {
+                    for (var item : geometry.getItems(primitive)) {
+                        if (item.layer() == layer && !doneList.contains(item))
+                            hits.add(item);
+                    }
+                }
+            } else {
+                final var set = primitives instanceof Set<? extends IPrimitive> primitiveSet ? primitiveSet : new HashSet<>(primitives);
+                for (var item : todoList) {
+                    if (item.layer() == layer && set.contains(item.primitive()))
+                        hits.add(item);
+                }
+            }
+            markItems(hits);
+        }
+    }
+
+    /**
+     * Clear the done and todo lists
+     */
+    public void clear() {
+        if (getSize() == 0 && getDoneSize() == 0)
+            return;
+        final var delta = new ClearDelta();
+        delta.redo();
+        history.record(delta);
+    }
+
+    /**
+     * Clear the done list by moving the todo items to the todo list
+     */
+    public void unmarkAll() {
+        if (getDoneSize() == 0)
+            return;
+        var size = getSize();
+        doneList.forEach(item -> setDone(item, false));
+        todoList.addAll(doneList);
+        doneList.clear();
+        statistics.unmarkedAll();
+        if (size == 0) {
+            fireIntervalAdded(0, getSize() - 1);
+            selectionModel.setSelectionInterval(0, 0);
+        } else {
+            fireIntervalAdded(size, getSize() - 1);
+        }
+        history.record(new UnmarkAllDelta(size, getSize()));
+    }
+
+    /**
+     * A change of all items that can be applied in chunks, see {@link #startBulkChange(BulkOperation)}
+     */
+    enum BulkOperation {
+        /** Mark all todo items as done, see {@link #markAll()} */
+        MARK_ALL,
+        /** Move all done items back to the todo list, see {@link #unmarkAll()} */
+        UNMARK_ALL,
+        /** Remove all todo and done items, see {@link #clear()} */
+        CLEAR
+    }
+
+    /**
+     * Start a change of all items that is applied in chunks
+     * @param operation The change
+     * @return The change, apply it with {@link BulkChange#step(int)} and end it with {@link BulkChange#finish()}
+     */
+    BulkChange startBulkChange(BulkOperation operation) {
+        return new BulkChange(operation);
+    }
+
+    /**
+     * A change of all items that is applied in chunks, so other events can be handled between the chunks. Every chunk
+     * is a complete change of the model, so the model is consistent after each of them. The applied chunks are kept as
+     * a single undo step, which every chunk extends.
+     * <p>
+     * If the model is changed between two chunks, e.g. by adding items or by undoing the chunks, the change stops, so
+     * the history always matches the lists. The chunks that were applied up to then stay a single undo step, unless
+     * they were undone.
+     */
+    final class BulkChange {
+        private final BulkOperation operation;
+        private final List<TodoListHistory.Delta> chunks = new ArrayList<>();
+        /** The history and its version after the last chunk, to detect changes of the model between the chunks */
+        private final TodoListHistory startHistory = history;
+        private int version = history.getVersion();
+        /** The undo step of the applied chunks */
+        private TodoListHistory.Delta recorded;
+        private boolean aborted;
+        /** The done items when the change was started, so the done set is not iterated from its start for every chunk */
+        private final TodoListItem[] done;
+        private final int total;
+        private int position;
+        private int changed;
+
+        private BulkChange(BulkOperation operation) {
+            this.operation = operation;
+            this.done = operation == BulkOperation.MARK_ALL ? new TodoListItem[0] : doneList.toArray(new TodoListItem[0]);
+            this.total = operation == BulkOperation.UNMARK_ALL ? done.length : getSize() + done.length;
+        }
+
+        /**
+         * Get the number of items that are changed
+         * @return The number of items when the change was started
+         */
+        int getTotal() {
+            return total;
+        }
+
+        /**
+         * Get the number of items that were changed
+         * @return The number of changed items
+         */
+        int getChanged() {
+            return changed;
+        }
+
+        /**
+         * Check if the change was stopped because the model was changed between two chunks
+         * @return {@code true} if the change was stopped
+         */
+        boolean isAborted() {
+            return aborted;
+        }
+
+        /**
+         * Change the next chunk of items
+         * @param count The maximum number of items to change
+         * @return {@code true} if there are items left to change, {@code false} when done or stopped
+         */
+        boolean step(int count) {
+            if (aborted || history != startHistory || history.getVersion() != version) {
+                aborted = true;
+                return false;
+            }
+            try (var timer = TodoMetrics.time("model.bulk." + operation.name().toLowerCase(Locale.ROOT))) {
+                final var recordedChunks = chunks.size();
+                final int chunk;
+                if (operation != BulkOperation.UNMARK_ALL && getSize() > 0 && changed < total) {
+                    chunk = removeTail(Math.min(count, total - changed));
+                } else if (operation != BulkOperation.MARK_ALL) {
+                    chunk = changeDone(count);
+                } else {
+                    chunk = 0;
+                }
+                changed += chunk;
+                timer.items(chunk);
+                if (chunks.size() > recordedChunks) {
+                    final var delta = chunks.size() == 1 ? chunks.get(0) : new CompoundDelta(chunks);
+                    history.replace(recorded, delta);
+                    recorded = delta;
+                    version = history.getVersion();
+                }
+                return chunk > 0 && changed < total;
+            }
+        }
+
+        /**
+         * Restore the selection after the last chunk
+         */
+        void finish() {
+            if (!aborted)
+                selectAfterHistoryChange(Math.max(0, selectionModel.getMinSelectionIndex()));
+        }
+
+        private int removeTail(int count) {
+            final var size = getSize();
+            final var indices = new BitSet();
+            indices.set(Math.max(0, size - count), size);
+            final var itemStates = states.get(indices);
+            final var items = removeAt(indices);
+            if (operation == BulkOperation.MARK_ALL) {
+                reserveReviewed(items.length);
+                for (var item : items) {
+                    doneList.add(item);
+                    itemMarked(item);
+                }
+                chunks.add(new MarkDelta(indices, items, itemStates));
+            } else {
+                for (var item : items) {
+                    itemRemoved(item, false);
+                }
+                chunks.add(new RemoveDelta(indices, items, new TodoListItem[0], itemStates));
+            }
+            return items.length;
+        }
+
+        private int changeDone(int count) {
+            final var items = new ArrayList<TodoListItem>(Math.min(count, done.length - position));
+            while (position < done.length && items.size() < count) {
+                final var item = done[position++];
+                // The item may have been changed by other edits between the chunks
+                if (doneList.remove(item))
+                    items.add(item);
+            }
+            if (items.isEmpty())
+                return 0;
+            final var array = items.toArray(new TodoListItem[0]);
+            if (operation == BulkOperation.UNMARK_ALL) {
+                items.forEach(TodoListCore.this::itemUnmarked);
+                final var indices = new BitSet();
+                indices.set(getSize(), getSize() + array.length);
+                insertAt(indices, array, null);
+                // Marking the appended items is the reverse of this chunk
+                chunks.add(new InverseDelta(new MarkDelta(indices, array, null)));
+            } else {
+                items.forEach(item -> itemRemoved(item, true));
+                chunks.add(new RemoveDelta(new BitSet(), new TodoListItem[0], array, null));
+            }
+            return array.length;
+        }
+    }
+
+    /**
+     * Get the review state of an item of the todo list
+     * @param index The index of the item
+     * @return The state
+     */
+    TodoItemState getState(int index) {
+        return states.get(index);
+    }
+
+    /**
+     * Get the number of items in a state. This does not scan the lists.
+     * @param state The state
+     * @return The number of items
+     */
+    int getCount(TodoItemState state) {
+        return switch (state) {
+            case DONE -> getDoneSize();
+            case TODO -> getSize() - states.countStateSet();
+            default -> states.count(state);
+        };
+    }
+
+    /**
+     * Get the items in a state
+     * @param state The state
+     * @return The items, in list order for the states of the todo list
+     */
+    List<TodoListItem> getItems(TodoItemState state) {
+        if (state == TodoItemState.DONE)
+            return new ArrayList<>(doneList);
+        return states.indicesOf(state, getSize()).stream().mapToObj(todoList::get).toList();
+    }
+
+    /**
+     * Select the items in a state
+     * @param state The state, not {@link TodoItemState#DONE}
+     */
+    void selectState(TodoItemState state) {
+        selectionModel.setSelectedIndices(states.indicesOf(state, getSize()).stream());
+    }
+
+    /**
+     * Set the state of the selected items. Setting {@link TodoItemState#DONE} marks the items.
+     * @param state The new state
+     */
+    void setSelectedState(TodoItemState state) {
+        if (state == TodoItemState.DONE) {
+            markSelectedItems();
+            return;
+        }
+        setState(getSelectedIndices(), state);
+    }
+
+    /**
+     * Set the state of items of the todo list
+     * @param indices The indices of the items
+     * @param state The new state, not {@link TodoItemState#DONE}
+     */
+    void setState(BitSet indices, TodoItemState state) {
+        if (indices.isEmpty())
+            return;
+        try (var timer = TodoMetrics.time("model.setState")) {
+            timer.items(indices.cardinality());
+            final var previous = states.get(indices);
+            if (previous == null && state == TodoItemState.TODO)
+                return;
+            states.set(indices, state);
+            history.record(new StateDelta(indices, previous, state));
+            fireContentsChanged(indices.nextSetBit(0), indices.length() - 1);
+        }
+    }
+
+    /**
+     * Get the todo items of a list
+     * @param name The name of the list
+     * @return The todo items, empty if there is no such list
+     */
+    List<TodoListItem> getTodoList(String name) {
+        if (name.equals(currentList))
+            return todoList;
+        final var state = lists.get(name);
+        return state == null ? Collections.emptyList() : state.todoList;
+    }
+
+    /**
+     * Keep only the todo items whose objects are in a set
+     * @param other The set of objects
+     */
+    void intersect(TodoIdSet other) {
+        try (var timer = TodoMetrics.time("model.intersect")) {
+            timer.items(getSize());
+            removeItems(TodoIdSet.of(todoList).andNot(other).toItems());
+        }
+    }
+
+    /**
+     * Add the objects of a set to the todo list. Objects that are done are moved back to the todo list.
+     * @param other The set of objects
+     */
+    void union(TodoIdSet other) {
+        try (var timer = TodoMetrics.time("model.union")) {
+            timer.items(getSize());
+            addItems(other.andNot(TodoIdSet.of(todoList)).toItems());
+        }
+    }
+
+    /**
+     * Remove the todo items whose objects are in a set
+     * @param other The set of objects
+     */
+    void subtract(TodoIdSet other) {
+        try (var timer = TodoMetrics.time("model.subtract")) {
+            timer.items(getSize());
+            removeItems(TodoIdSet.of(todoList).and(other).toItems());
+        }
+    }
+
+    /**
+     * Remove the todo items whose objects are in a set, and add the other objects of the set, in a single undo step
+     * @param other The set of objects
+     */
+    void symmetricDifference(TodoIdSet other) {
+        try (var timer = TodoMetrics.time("model.symmetricDifference")) {
+            timer.items(getSize());
+            final var todo = TodoIdSet.of(todoList);
+            final var toAdd = other.andNot(todo).toItems();
+            final var toRemove = todo.and(other).toItems();
+            batch(() -> {
+                removeItems(toRemove);
+                addItems(toAdd);
+            });
+        }
+    }
+
+    /**
+     * Undo the last todo list operation
+     */
+    void undo() {
+        history.undo();
+    }
+
+    /**
+     * Redo the last undone todo list operation
+     */
+    void redo() {
+        history.redo();
+    }
+
+    TodoListHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Run a change so that it fires a single list event, even if it changes several ranges of the list, and is undone
+     * in a single step, even if it consists of several changes
+     * @param change The change to run
+     */
+    void batch(Runnable change) {
+        final var batchHistory = history;
+        batchDepth++;
+        batchHistory.startGroup();
+        try {
+            change.run();
+        } finally {
+            batchDepth--;
+            batchHistory.endGroup(CompoundDelta::new);
+        }
+    }
+
+    /**
+     * Insert items into the todo list at the given indices in a single pass
+     * @param indices The indices of the items in the resulting list
+     * @param items The items to insert, in index order
+     * @param itemStates The states of the items as returned by {@link TodoItemStates#get(BitSet)}
+     */
+    private void insertAt(BitSet indices, TodoListItem[] items, byte[] itemStates) {
+        if (items.length == 0)
+            return;
+        final var size = todoList.size();
+        if (indices.nextSetBit(0) == size && indices.length() == size + items.length) {
+            // Appending does not need to copy the list
+            todoList.addAll(Arrays.asList(items));
+            states.insert(indices, itemStates);
+            fireRuns(indices, true);
+            return;
+        }
+        final var merged = new ArrayList<TodoListItem>(todoList.size() + items.length);
+        var source = 0;
+        var item = 0;
+        for (var i = indices.nextSetBit(0); i >= 0; i = indices.nextSetBit(i + 1)) {
+            while (merged.size() < i && source < todoList.size())
+                merged.add(todoList.get(source++));
+            merged.add(items[item++]);
+        }
+        merged.addAll(todoList.subList(source, todoList.size()));
+        todoList = merged;
+        geometry.invalidateIndices(indices.nextSetBit(0));
+        states.insert(indices, itemStates);
+        fireRuns(indices, true);
+    }
+
+    /**
+     * Remove items from the todo list at the given indices in a single pass
+     * @param indices The indices of the items to remove
+     * @return The removed items, in index order
+     */
+    private TodoListItem[] removeAt(BitSet indices) {
+        final var size = getSize();
+        final var removed = new TodoListItem[indices.cardinality()];
+        if (removed.length == 0)
+            return removed;
+        final var from = size - removed.length;
+        if (indices.nextSetBit(0) == from && indices.length() == size) {
+            // Removing the end of the list does not need to copy the rest of it
+            final var tail = todoList.subList(from, size);
+            tail.toArray(removed);
+            tail.clear();
+            states.truncate(from);
+            geometry.invalidateIndices(from);
+            fireRuns(indices, false);
+            return removed;
+        }
+        final var kept = new ArrayList<TodoListItem>(size - removed.length);
+        var item = 0;
+        for (var i = 0; i < size; i++) {
+            if (indices.get(i))
+                removed[item++] = todoList.get(i);
+            else
+                kept.add(todoList.get(i));
+        }
+        todoList = kept;
+        states.remove(indices);
+        geometry.invalidateIndices(indices.nextSetBit(0));
+        fireRuns(indices, false);
+        return removed;
+    }
+
+    /**
+     * Fire the list events for the contiguous runs of {@code indices}. When there are many runs, a single added or
+     * removed interval at the first index plus a changed interval for the rest of the span is fired instead, since
+     * every event makes the list view and selection model do some work.
+     * @param indices The changed indices, after adding or before removing
+     * @param added {@code true} if the items were added, {@code false} if they were removed
+     */
+    private void fireRuns(BitSet indices, boolean added) {
+        final List<int[]> runs = new ArrayList<>();
+        for (var start = indices.nextSetBit(0); start >= 0 && runs.size() <= MAX_PRECISE_EVENTS;
+                start = indices.nextSetBit(start + 1)) {
+            final var end = indices.nextClearBit(start) - 1;
+            runs.add(new int[] {start, end});
+            start = end;
+        }
+        if (runs.isEmpty()) {
+            return;
+        }
+        if (runs.size() > MAX_PRECISE_EVENTS || (batchDepth > 0 && runs.size() > 1)) {
+            // Announce the right number of items as one block at the first index, and the shifted rest of the span
+            // between the first and the last index as changed. Items outside of the span are not affected.
+            final var first = indices.nextSetBit(0);
+            final var last = indices.length() - 1;
+            final var count = indices.cardinality();
+            if (added) {
+                fireIntervalAdded(first, first + count - 1);
+                if (last >= first + count)
+                    fireContentsChanged(first + count, last);
+            } else {
+                fireIntervalRemoved(first, first + count - 1);
+                if (last - count >= first)
+                    fireContentsChanged(first, last - count);
+            }
+        } else if (added) {
+            // Ascending order, so every event refers to the list including the runs that were already announced
+            runs.forEach(run -> fireIntervalAdded(run[0], run[1]));
+        } else {
+            // Descending order, so the indices of the remaining runs stay valid
+            for (var i = runs.size() - 1; i >= 0; i--) {
+                fireIntervalRemoved(runs.get(i)[0], runs.get(i)[1]);
+            }
+        }
+    }
+
+    private void selectAfterHistoryChange(int index) {
+        if (getSize() == 0) {
+            selectionModel.clearSelection();
+        } else {
+            final var sel = Math.max(0, Math.min(index, getSize() - 1));
+            selectionModel.setSelectionInterval(sel, sel);
+        }
+    }
+
+    /**
+     * Items that were appended to the todo list, possibly moved from the done list
+     */
+    private final class AddDelta implements TodoListHistory.Delta {
+        private final int from;
+        private final int to;
+        private final TodoListItem[] unmarked;
+        /** The added items, only kept while the addition is undone */
+        private List<TodoListItem> added;
+
+        AddDelta(int from, int to, TodoListItem[] unmarked) {
+            this.from = from;
+            this.to = to;
+            this.unmarked = unmarked;
+        }
+
+        @Override
+        public void undo() {
+            final var tail = todoList.subList(from, to);
+            added = new ArrayList<>(tail);
+            tail.clear();
+            states.truncate(from);
+            geometry.invalidateIndices(from);
+            added.forEach(item -> itemRemoved(item, false));
+            if (to > from)
+                fireIntervalRemoved(from, to - 1);
+            for (TodoListItem item : unmarked) {
+                doneList.add(item);
+                itemAdded(item, true);
+            }
+            selectAfterHistoryChange(from);
+        }
+
+        @Override
+        public void redo() {
+            for (TodoListItem item : unmarked) {
+                doneList.remove(item);
+                itemRemoved(item, true);
+            }
+            todoList.addAll(added);
+            added.forEach(item -> itemAdded(item, false));
+            added = null;
+            if (to > from)
+                fireIntervalAdded(from, to - 1);
+            selectAfterHistoryChange(from);
+        }
+
+        @Override
+        public int size() {
+            return to - from + unmarked.length;
+        }
+    }
+
+    /**
+     * Items that were moved from the todo list to the done list
+     */
+    private final class MarkDelta implements TodoListHistory.Delta {
+        private final BitSet indices;
+        private final TodoListItem[] items;
+        private final byte[] itemStates;
+
+        MarkDelta(BitSet indices, TodoListItem[] items, byte[] itemStates) {
+            this.indices = indices;
+            this.items = items;
+            this.itemStates = itemStates;
+        }
+
+        @Override
+        public void undo() {
+            for (TodoListItem item : items) {
+                doneList.remove(item);
+                itemUnmarked(item);
+            }
+            insertAt(indices, items, itemStates);
+            selectAfterHistoryChange(indices.nextSetBit(0));
+        }
+
+        @Override
+        public void redo() {
+            reserveReviewed(items.length);
+            for (TodoListItem item : removeAt(indices)) {
+                doneList.add(item);
+                itemRemarked(item);
+            }
+            selectAfterHistoryChange(indices.nextSetBit(0));
+        }
+
+        @Override
+        public int size() {
+            return items.length;
+        }
+    }
+
+    /**
+     * Several changes that are undone and redone together
+     */
+    private final class CompoundDelta implements TodoListHistory.Delta {
+        private final List<TodoListHistory.Delta> deltas;
+        private final int size;
+
+        CompoundDelta(List<TodoListHistory.Delta> deltas) {
+            this.deltas = List.copyOf(deltas);
+            this.size = deltas.stream().mapToInt(TodoListHistory.Delta::size).sum();
+        }
+
+        @Override
+        public void undo() {
+            batch(() -> {
+                for (var i = deltas.size() - 1; i >= 0; i--) {
+                    deltas.get(i).undo();
+                }
+            });
+        }
+
+        @Override
+        public void redo() {
+            batch(() -> deltas.forEach(TodoListHistory.Delta::redo));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * The reverse of a change
+     */
+    private static final class InverseDelta implements TodoListHistory.Delta {
+        private final TodoListHistory.Delta delta;
+
+        InverseDelta(TodoListHistory.Delta delta) {
+            this.delta = delta;
+        }
+
+        @Override
+        public void undo() {
+            delta.redo();
+        }
+
+        @Override
+        public void redo() {
+            delta.undo();
+        }
+
+        @Override
+        public int size() {
+            return delta.size();
+        }
+    }
+
+    /**
+     * The state of todo items was changed
+     */
+    private final class StateDelta implements TodoListHistory.Delta {
+        private final BitSet indices;
+        private final byte[] previous;
+        private final TodoItemState state;
+
+        StateDelta(BitSet indices, byte[] previous, TodoItemState state) {
+            this.indices = indices;
+            this.previous = previous;
+            this.state = state;
+        }
+
+        @Override
+        public void undo() {
+            states.restore(indices, previous);
+            fireContentsChanged(indices.nextSetBit(0), indices.length() - 1);
+        }
+
+        @Override
+        public void redo() {
+            states.set(indices, state);
+            fireContentsChanged(indices.nextSetBit(0), indices.length() - 1);
+        }
+
+        @Override
+        public int size() {
+            return indices.cardinality();
+        }
+    }
+
+    /**
+     * Items that were removed from the todo and done lists
+     */
+    private final class RemoveDelta implements TodoListHistory.Delta {
+        private final BitSet indices;
+        private final TodoListItem[] todoItems;
+        private final TodoListItem[] doneItems;
+        private final byte[] itemStates;
+
+        RemoveDelta(BitSet indices, TodoListItem[] todoItems, TodoListItem[] doneItems, byte[] itemStates) {
+            this.indices = indices;
+            this.todoItems = todoItems;
+            this.doneItems = doneItems;
+            this.itemStates = itemStates;
+        }
+
+        @Override
+        public void undo() {
+            insertAt(indices, todoItems, itemStates);
+            for (TodoListItem item : todoItems) {
+                itemAdded(item, false);
+            }
+            for (TodoListItem item : doneItems) {
+                doneList.add(item);
+                itemAdded(item, true);
+            }
+            selectAfterHistoryChange(indices.nextSetBit(0));
+        }
+
+        @Override
+        public void redo() {
+            for (TodoListItem item : removeAt(indices)) {
+                itemRemoved(item, false);
+            }
+            for (TodoListItem item : doneItems) {
+                doneList.remove(item);
+                itemRemoved(item, true);
+            }
+            selectAfterHistoryChange(indices.nextSetBit(0));
+        }
+
+        @Override
+        public int size() {
+            return todoItems.length + doneItems.length;
+        }
+    }
+
+    /**
+     * All todo items were moved to the done list. The previous todo list is kept as is instead of being copied.
+     */
+    private final class MarkAllDelta implements TodoListHistory.Delta {
+        private final int count = getSize();
+        /** The previous todo list and its states, only kept while the change is applied */
+        private List<TodoListItem> previous;
+        private TodoItemStates previousStates;
+
+        @Override
+        public void undo() {
+            for (TodoListItem item : previous) {
+                doneList.remove(item);
+                itemUnmarked(item);
+            }
+            todoList.addAll(previous);
+            states = previousStates;
+            previous = null;
+            previousStates = null;
+            fireIntervalAdded(0, count - 1);
+            selectAfterHistoryChange(0);
+        }
+
+        @Override
+        public void redo() {
+            apply();
+            // apply() already set the items done
+            previous.forEach(statistics::remarked);
+        }
+
+        void apply() {
+            previous = todoList;
+            previousStates = states;
+            todoList = new ArrayList<>();
+            states = new TodoItemStates();
+            geometry.invalidateIndices(0);
+            doneList.addAll(previous);
+            reserveReviewed(previous.size());
+            previous.forEach(item -> setDone(item, true));
+            fireIntervalRemoved(0, count - 1);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+
+    /**
+     * All done items were appended to the todo list
+     */
+    private final class UnmarkAllDelta implements TodoListHistory.Delta {
+        private final int from;
+        private final int to;
+
+        UnmarkAllDelta(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void undo() {
+            final var tail = todoList.subList(from, to);
+            reserveReviewed(tail.size());
+            for (TodoListItem item : tail) {
+                doneList.add(item);
+                itemRemarked(item);
+            }
+            tail.clear();
+            states.truncate(from);
+            geometry.invalidateIndices(from);
+            fireIntervalRemoved(from, to - 1);
+            selectAfterHistoryChange(from);
+        }
+
+        @Override
+        public void redo() {
+            doneList.forEach(item -> setDone(item, false));
+            todoList.addAll(doneList);
+            doneList.clear();
+            statistics.unmarkedAll();
+            fireIntervalAdded(from, to - 1);
+            selectAfterHistoryChange(from);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+
+    /**
+     * Both lists were cleared. The previous lists are kept as is instead of being copied.
+     */
+    private final class ClearDelta implements TodoListHistory.Delta {
+        private final int size = getSize() + getDoneSize();
+        private List<TodoListItem> previousTodo;
+        private Collection<TodoListItem> previousDone;
+        private TodoItemStates previousStates;
+
+        @Override
+        public void undo() {
+            todoList = previousTodo;
+            doneList = previousDone;
+            states = previousStates;
+            previousTodo = null;
+            previousDone = null;
+            previousStates = null;
+            todoList.forEach(item -> itemAdded(item, false));
+            doneList.forEach(item -> itemAdded(item, true));
+            if (!todoList.isEmpty())
+                fireIntervalAdded(0, todoList.size() - 1);
+            selectAfterHistoryChange(0);
+        }
+
+        @Override
+        public void redo() {
+            previousTodo = todoList;
+            previousDone = doneList;
+            previousStates = states;
+            todoList = new ArrayList<>();
+            doneList = new HashSet<>();
+            states = new TodoItemStates();
+            statistics.clear();
+            geometry.clear();
+            priority.forget(previousTodo);
+            priority.forget(previousDone);
+            selectionCounts.reset();
+            if (priorityQueue != null)
+                priorityQueue.clear();
+            if (!previousTodo.isEmpty())
+                fireIntervalRemoved(0, previousTodo.size() - 1);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Get a summary for this model
+     * @return The summary string
+     */
+    String getSummary() {
+        final var counter = statistics.getAll();
+        int totalSize = counter.getTotal();
+        if (totalSize == 0) {
+            return tr("Todo list");
+        } else {
+            return tr("Todo list {0}/{1} ({2}%)", counter.getDone(), totalSize, 100.0 * counter.getDone() / totalSize);
+        }
+    }
+
+    /**
+     * Triggers a refresh of the view for all items in {@code toUpdate}
+     * which are currently displayed in the view
+     *
+     * @param toUpdate the collection of items to update
+     */
+    synchronized void update(Collection<? extends TodoListItem> toUpdate) {
+        if (toUpdate == null) return;
+        if (toUpdate.isEmpty()) return;
+        try (var timer = TodoMetrics.time("model.update")) {
+            timer.items(toUpdate.size());
+            // The indices do not change, so the selection can be restored by index
+            final var sel = getSelectedIndices();
+            final var indices = indicesOf(toUpdate);
+            for (var start = indices.nextSetBit(0); start >= 0; start = indices.nextSetBit(start + 1)) {
+                final var end = indices.nextClearBit(start) - 1;
+                fireContentsChanged(start, end);
+                start = end;
+            }
+            if (!sel.equals(getSelectedIndices())) {
+                selectionModel.setSelectedIndices(sel.stream());
+            }
+        }
+    }
+
+    /**
+     * Remember the done items of the changed primitives and of the primitives referring to them
+     * @param primitives The changed primitives
+     */
+    private void changed(Collection<? extends OsmPrimitive> primitives) {
+        if (priorityQueue != null) {
+            for (var primitive : primitives) {
+                for (var item : geometry.getItems(primitive)) {
+                    if (priorityQueue.contains(item))
+                        priorityQueue.update(item, priority.score(item));
+                }
+            }
+        }
+        if (doneList.isEmpty())
+            return;
+        final var before = changedDone.size();
+        for (var primitive : primitives) {
+            addChangedDone(primitive);
+            primitive.getReferrers().forEach(this::addChangedDone);
+        }
+        if (changedDone.size() != before) {
+            changedDoneListeners.forEach(Runnable::run);
+        }
+    }
+
+    private void addChangedDone(OsmPrimitive primitive) {
+        for (var item : geometry.getItems(primitive)) {
+            if (doneList.contains(item)) {
+                changedDone.add(item);
+            }
+        }
+    }
+
+    /**
+     * Apply the {@link TodoAutoRules} to the primitives of the changes, in a single change of the model
+     * @param events The changes
+     */
+    private void applyRules(Collection<? extends AbstractDatasetChangedEvent> events) {
+        if (!TodoAutoRules.isEnabled())
+            return;
+        final var toMark = new LinkedHashSet<TodoListItem>();
+        final var toReopen = new LinkedHashSet<TodoListItem>();
+        for (var event : events) {
+            for (var primitive : event.getPrimitives()) {
+                final var items = geometry.getItems(primitive);
+                if (items.isEmpty())
+                    continue;
+                // A change that marks the todo items of an object does not reopen its done items
+                for (var item : items) {
+                    if (!doneList.contains(item)) {
+                        if (TodoAutoRules.marks(event, primitive))
+                            toMark.add(item);
+                    } else if (TodoAutoRules.reopens(event, primitive)) {
+                        toReopen.add(item);
+                    }
+                }
+            }
+        }
+        if (toMark.isEmpty() && toReopen.isEmpty())
+            return;
+        // One undo step for both changes
+        batch(() -> {
+            if (!toMark.isEmpty())
+                markItems(toMark);
+            if (!toReopen.isEmpty())
+                addItems(toReopen);
+        });
+    }
+
+    private void moved(Collection<? extends OsmPrimitive> primitives) {
+        geometry.moved(primitives);
+        getInactiveLists().forEach(state -> state.geometry.moved(primitives));
+    }
+
+    @Override
+    public void primitivesAdded(PrimitivesAddedEvent event) {
+        // ignored
+    }
+
+    @Override
+    public void primitivesRemoved(PrimitivesRemovedEvent event) {
+        try (var timer = TodoMetrics.time("event.primitivesRemoved")) {
+            timer.items(event.getPrimitives().size());
+            for (var state : getInactiveLists()) {
+                event.getPrimitives().forEach(primitive -> state.removed.addAll(state.geometry.getItems(primitive)));
+            }
+            if (remove(getItemsForPrimitives(event.getPrimitives(), event.getDataset())) != null) {
+                // The removal is done by the JOSM undo stack, so the todo list history is no longer consistent
+                history.clear();
+            }
+        }
+    }
+
+    @Override
+    public void tagsChanged(TagsChangedEvent event) {
+        try (var timer = TodoMetrics.time("event.tagsChanged")) {
+            timer.items(event.getPrimitives().size());
+            changed(event.getPrimitives());
+            update(getItemsForPrimitives(event.getPrimitives(), event.getDataset()));
+            applyRules(List.of(event));
+        }
+    }
+
+    @Override
+    public void nodeMoved(NodeMovedEvent event) {
+        try (var timer = TodoMetrics.time("event.nodeMoved")) {
+            timer.items(event.getPrimitives().size());
+            moved(event.getPrimitives());
+            changed(event.getPrimitives());
+            update(getItemsForPrimitives(event.getPrimitives(), event.getDataset()));
+            applyRules(List.of(event));
+        }
+    }
+
+    @Override
+    public void wayNodesChanged(WayNodesChangedEvent event) {
+        try (var timer = TodoMetrics.time("event.wayNodesChanged")) {
+            timer.items(event.getPrimitives().size());
+            moved(event.getPrimitives());
+            changed(event.getPrimitives());
+            update(getItemsForPrimitives(event.getPrimitives(), event.getDataset()));
+            applyRules(List.of(event));
+        }
+    }
+
+    @Override
+    public void relationMembersChanged(RelationMembersChangedEvent event) {
+        try (var timer = TodoMetrics.time("event.relationMembersChanged")) {
+            timer.items(event.getPrimitives().size());
+            moved(event.getPrimitives());
+            changed(event.getPrimitives());
+            update(getItemsForPrimitives(event.getPrimitives(), event.getDataset()));
+            applyRules(List.of(event));
+        }
+    }
+
+    @Override
+    public void otherDatasetChange(AbstractDatasetChangedEvent event) {
+        try (var timer = TodoMetrics.time("event.otherDatasetChange")) {
+            timer.items(event.getPrimitives().size());
+            changed(event.getPrimitives());
+            update(getItemsForPrimitives(event.getPrimitives(), event.getDataset()));
+            applyRules(List.of(event));
+        }
+    }
+
+    @Override
+    public void dataChanged(DataChangedEvent event) {
+        // We cannot just call event.getPrimitives since some events just return all primitives in the dataset.
+        try (var timer = TodoMetrics.time("event.dataChanged")) {
+            final Collection<OsmPrimitive> changedPrimitives;
+            final var changeEvents = event.getEvents();
+            if (changeEvents != null) {
+                changedPrimitives = new HashSet<>();
+                for (var e : changeEvents) {
+                    if (e instanceof PrimitivesRemovedEvent primitivesRemovedEvent) {
+                        primitivesRemoved(primitivesRemovedEvent);
+                    } else if (e instanceof NodeMovedEvent || e instanceof WayNodesChangedEvent
+                            || e instanceof RelationMembersChangedEvent) {
+                        moved(e.getPrimitives());
+                    }
+                    changedPrimitives.addAll(e.getPrimitives());
+                }
+            } else {
+                changedPrimitives = event.getPrimitives();
+                moved(changedPrimitives);
+            }
+            timer.items(changedPrimitives.size());
+            changed(changedPrimitives);
+            update(getItemsForPrimitives(changedPrimitives, event.getDataset()));
+            if (changeEvents != null) {
+                applyRules(changeEvents);
+            }
+        }
+    }
+}
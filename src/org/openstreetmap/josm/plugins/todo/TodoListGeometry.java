@@ -0,0 +1,297 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openstreetmap.josm.data.ProjectionBounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
+
+/**
+ * The projected positions of the items of a {@link TodoListModel}, with spatial indexes of the todo and done items.
+ * <p>
+ * The model keeps this up to date on every change of the lists, and from the dataset events for moved primitives, so
+ * viewport and nearest item queries never scan the lists.
+ * <p>
+ * The entries also remember the index of their item in the todo list. The indices are valid up to a watermark: the
+ * model lowers it to the first index that a change of the list shifted, and lookups beyond it assign the indices while
+ * walking the list from the watermark. A change that shifts the list copies it anyway, so the walk costs no more than
+ * the change that caused it, and appends or lookups of items that did not move cost nothing.
+ */
+final class TodoListGeometry {
+    private static final class Entry {
+        private EastNorth position;
+        private boolean done;
+        /** The index in the todo list, only valid below {@link #validIndices} */
+        private int index = -1;
+
+        Entry(EastNorth position, boolean done) {
+            this.position = position;
+            this.done = done;
+        }
+    }
+
+    private final Map<TodoListItem, Entry> entries = new HashMap<>();
+    private final Map<IPrimitive, List<TodoListItem>> byPrimitive = new HashMap<>();
+    private final TodoSpatialIndex todoIndex = new TodoSpatialIndex();
+    private final TodoSpatialIndex doneIndex = new TodoSpatialIndex();
+    private Projection projection = ProjectionRegistry.getProjection();
+    /** The number of todo list items from the start of the list whose entries have a valid index */
+    private int validIndices;
+
+    /**
+     * Record an item that was added to the model
+     * @param item The added item
+     * @param done {@code true} if the item was added to the done list
+     */
+    void added(TodoListItem item, boolean done) {
+        final var entry = new Entry(position(item.primitive()), done);
+        final var previous = entries.put(item, entry);
+        if (previous != null) {
+            index(previous.done).remove(item, previous.position);
+        } else {
+            byPrimitive.computeIfAbsent(item.primitive(), p -> new ArrayList<>(1)).add(item);
+        }
+        index(done).add(item, entry.position);
+    }
+
+    /**
+     * Record an item that was removed from the model
+     * @param item The removed item
+     */
+    void removed(TodoListItem item) {
+        final var entry = entries.remove(item);
+        if (entry != null) {
+            index(entry.done).remove(item, entry.position);
+            final var items = byPrimitive.get(item.primitive());
+            if (items != null && items.remove(item) && items.isEmpty()) {
+                byPrimitive.remove(item.primitive());
+            }
+        }
+    }
+
+    /**
+     * Record an item that was moved between the todo and done lists
+     * @param item The item
+     * @param done {@code true} if the item is now done
+     */
+    void setDone(TodoListItem item, boolean done) {
+        final var entry = entries.get(item);
+        if (entry != null && entry.done != done) {
+            index(entry.done).remove(item, entry.position);
+            entry.done = done;
+            index(done).add(item, entry.position);
+        }
+    }
+
+    /**
+     * Remove all items
+     */
+    void clear() {
+        entries.clear();
+        byPrimitive.clear();
+        todoIndex.clear();
+        doneIndex.clear();
+        validIndices = 0;
+    }
+
+    /**
+     * Record that the todo list changed from an index on, other than by appending items
+     * @param from The first index whose item changed
+     */
+    void invalidateIndices(int from) {
+        validIndices = Math.min(validIndices, Math.max(0, from));
+    }
+
+    /**
+     * Get the index of an item in the todo list
+     * @param item The item
+     * @param todoList The todo list of the model
+     * @return The index, or {@code -1} if the item is not in the todo list
+     */
+    int indexOf(TodoListItem item, List<TodoListItem> todoList) {
+        final var entry = entries.get(item);
+        if (entry == null || entry.done)
+            return -1;
+        validIndices = Math.min(validIndices, todoList.size());
+        if (entry.index >= 0 && entry.index < validIndices && item.equals(todoList.get(entry.index)))
+            return entry.index;
+        var index = walkIndices(item, todoList);
+        if (index < 0 && validIndices > 0) {
+            // Only reached if a change of the list was not recorded, so recover with a full walk
+            validIndices = 0;
+            index = walkIndices(item, todoList);
+        }
+        return index;
+    }
+
+    private int walkIndices(TodoListItem item, List<TodoListItem> todoList) {
+        while (validIndices < todoList.size()) {
+            final var index = validIndices++;
+            final var next = todoList.get(index);
+            final var entry = entries.get(next);
+            if (entry != null)
+                entry.index = index;
+            if (next.equals(item))
+                return index;
+        }
+        return -1;
+    }
+
+    /**
+     * Update the positions of the items for primitives that moved, and of the items referring to them
+     * @param primitives The primitives that moved
+     */
+    void moved(Collection<? extends OsmPrimitive> primitives) {
+        checkProjection();
+        final Set<OsmPrimitive> visited = new HashSet<>();
+        var current = new ArrayList<OsmPrimitive>(primitives);
+        while (!current.isEmpty()) {
+            final var next = new ArrayList<OsmPrimitive>();
+            for (var primitive : current) {
+                if (!visited.add(primitive)) {
+                    continue;
+                }
+                final var items = byPrimitive.get(primitive);
+                if (items != null) {
+                    final var position = position(primitive);
+                    for (var item : items) {
+                        final var entry = entries.get(item);
+                        index(entry.done).remove(item, entry.position);
+                        entry.position = position;
+                        index(entry.done).add(item, position);
+                    }
+                }
+                next.addAll(primitive.getReferrers());
+            }
+            current = next;
+        }
+    }
+
+    /**
+     * Get the items of a primitive
+     * @param primitive The primitive
+     * @return The items for the primitive, usually only one
+     */
+    List<TodoListItem> getItems(IPrimitive primitive) {
+        return byPrimitive.getOrDefault(primitive, Collections.emptyList());
+    }
+
+    /**
+     * Get the projected position of an item
+     * @param item The item
+     * @return The position, or {@code null} if the item is not in the model or has no known position
+     */
+    EastNorth getPosition(TodoListItem item) {
+        checkProjection();
+        final var entry = entries.get(item);
+        return entry != null ? entry.position : null;
+    }
+
+    /**
+     * Check if an item is in the model
+     * @param item The item
+     * @return {@code true} if the item is in the todo or done list
+     */
+    boolean contains(TodoListItem item) {
+        return entries.containsKey(item);
+    }
+
+    /**
+     * Check if an item is in the done list
+     * @param item The item
+     * @return {@code true} if the item is done, {@code false} if it is in the todo list or not in the model
+     */
+    boolean isDone(TodoListItem item) {
+        final var entry = entries.get(item);
+        return entry != null && entry.done;
+    }
+
+    /**
+     * Get the spatial index of the todo or done items
+     * @param done {@code true} for the done items
+     * @return The index
+     */
+    TodoSpatialIndex getIndex(boolean done) {
+        checkProjection();
+        return index(done);
+    }
+
+    /**
+     * Get the todo or done items in an area
+     * @param bounds The area
+     * @param done {@code true} for the done items
+     * @return The items in the area
+     */
+    List<TodoListItem> getItems(ProjectionBounds bounds, boolean done) {
+        final var items = new ArrayList<TodoListItem>();
+        getIndex(done).visit(bounds.minEast, bounds.minNorth, bounds.maxEast, bounds.maxNorth, 0, new TodoSpatialIndex.Visitor() {
+            @Override
+            public void item(TodoListItem item, double east, double north) {
+                items.add(item);
+            }
+
+            @Override
+            public void cluster(int count, double east, double north) {
+                // Not called without a cluster size
+            }
+        });
+        return items;
+    }
+
+    /**
+     * Get the todo item closest to a position
+     * @param position The position
+     * @return The closest todo item, or {@code null} if there is none with a known position
+     */
+    TodoListItem getNearest(EastNorth position) {
+        return getIndex(false).nearest(position.east(), position.north());
+    }
+
+    private TodoSpatialIndex index(boolean done) {
+        return done ? doneIndex : todoIndex;
+    }
+
+    /**
+     * Reproject all items when the projection changed
+     */
+    private void checkProjection() {
+        if (projection != ProjectionRegistry.getProjection()) {
+            projection = ProjectionRegistry.getProjection();
+            todoIndex.clear();
+            doneIndex.clear();
+            entries.forEach((item, entry) -> {
+                entry.position = position(item.primitive());
+                index(entry.done).add(item, entry.position);
+            });
+        }
+    }
+
+    /**
+     * Get the projected position of a primitive, i.e. the center of its bounding box
+     * @param primitive The primitive
+     * @return The position, or {@code null} if the primitive has no known position
+     */
+    private EastNorth position(IPrimitive primitive) {
+        if (projection == null) {
+            return null;
+        } else if (primitive instanceof Node node) {
+            return node.isLatLonKnown() ? node.getEastNorth() : null;
+        } else if (primitive instanceof OsmPrimitive osm) {
+            final var bbox = osm.getBBox();
+            return bbox.isValid() ? projection.latlon2eastNorth(bbox.getCenter()) : null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,191 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Function;
+
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
+
+/**
+ * The undo/redo history of a {@link TodoListModel}.
+ * <p>
+ * The history only stores deltas (index sets and the moved items), never copies of the lists. The number of items
+ * referenced by the deltas is capped, older deltas are dropped when the cap is reached.
+ */
+final class TodoListHistory {
+    /** The maximum number of item references kept in the history */
+    static final IntegerProperty MAX_ITEMS = new IntegerProperty("todo.undo.max-items", 2_000_000);
+    /** The maximum number of steps kept in the history */
+    static final IntegerProperty MAX_STEPS = new IntegerProperty("todo.undo.max-steps", 50);
+
+    /**
+     * A reversible change to the model
+     */
+    interface Delta {
+        /**
+         * Revert the change
+         */
+        void undo();
+
+        /**
+         * Apply the change again after it was reverted
+         */
+        void redo();
+
+        /**
+         * Get the number of items this delta refers to. This must not change over the life of the delta.
+         * @return The size used for the memory cap
+         */
+        int size();
+    }
+
+    private final Deque<Delta> undoStack = new ArrayDeque<>();
+    private final Deque<Delta> redoStack = new ArrayDeque<>();
+    private final Runnable listener;
+    private long size;
+    /** The deltas recorded in the current group, or {@code null} outside of a group */
+    private List<Delta> group;
+    private int groupDepth;
+    /** Counts the changes of the history, so changes of the model between two steps of a longer change are detected */
+    private int version;
+
+    /**
+     * Create a new history
+     * @param listener The listener to call when the history changes
+     */
+    TodoListHistory(Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Record a new change. This drops the redo history.
+     * @param delta The change that was just applied
+     */
+    void record(Delta delta) {
+        if (group != null) {
+            group.add(delta);
+            return;
+        }
+        version++;
+        redoStack.forEach(d -> size -= d.size());
+        redoStack.clear();
+        if (delta.size() > MAX_ITEMS.get()) {
+            // The change is too large to be kept, and the older deltas cannot be applied without it.
+            undoStack.clear();
+            size = 0;
+        } else {
+            undoStack.push(delta);
+            size += delta.size();
+            while (size > MAX_ITEMS.get() || undoStack.size() > Math.max(1, MAX_STEPS.get())) {
+                size -= undoStack.removeLast().size();
+            }
+        }
+        fireChanged();
+    }
+
+    /**
+     * Replace the last recorded change, e.g. by a change that was extended since it was recorded
+     * @param last The change that was recorded last
+     * @param delta The change to record instead
+     */
+    void replace(Delta last, Delta delta) {
+        if (last != null && group == null && undoStack.peek() == last) {
+            size -= undoStack.pop().size();
+        }
+        record(delta);
+    }
+
+    /**
+     * Start collecting the recorded deltas, so they are recorded as a single step by {@link #endGroup(Function)}.
+     * Groups can be nested, the deltas are recorded when the outermost group ends.
+     */
+    void startGroup() {
+        if (groupDepth++ == 0) {
+            group = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Record the deltas collected since {@link #startGroup()} as a single step
+     * @param combiner Combines several deltas into one, in the order they were recorded
+     */
+    void endGroup(Function<List<Delta>, Delta> combiner) {
+        if (--groupDepth > 0) {
+            return;
+        }
+        final var deltas = group;
+        group = null;
+        if (deltas.size() == 1) {
+            record(deltas.get(0));
+        } else if (!deltas.isEmpty()) {
+            record(combiner.apply(deltas));
+        }
+    }
+
+    /**
+     * Revert the last change
+     */
+    void undo() {
+        final var delta = undoStack.poll();
+        if (delta != null) {
+            version++;
+            delta.undo();
+            redoStack.push(delta);
+            fireChanged();
+        }
+    }
+
+    /**
+     * Apply the last reverted change again
+     */
+    void redo() {
+        final var delta = redoStack.poll();
+        if (delta != null) {
+            version++;
+            delta.redo();
+            undoStack.push(delta);
+            fireChanged();
+        }
+    }
+
+    /**
+     * Get the number of changes of the history so far. Every change of the model records, undoes or redoes a change,
+     * or clears the history, so this also detects changes of the model.
+     * @return The modification count
+     */
+    int getVersion() {
+        return version;
+    }
+
+    boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+
+    boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    /**
+     * Drop the whole history, e.g. when the model was changed in a way that cannot be undone
+     */
+    void clear() {
+        version++;
+        if (group != null) {
+            // The deltas of the group were applied before the change that cannot be undone
+            group.clear();
+        }
+        if (!undoStack.isEmpty() || !redoStack.isEmpty()) {
+            undoStack.clear();
+            redoStack.clear();
+            size = 0;
+            fireChanged();
+        }
+    }
+
+    private void fireChanged() {
+        listener.run();
+    }
+}
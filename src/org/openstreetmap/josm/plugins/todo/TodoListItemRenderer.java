@@ -23,13 +23,18 @@ public class TodoListItemRenderer implements ListCellRenderer<TodoListItem> {
     @Override
     public Component getListCellRendererComponent(JList<? extends TodoListItem> list, TodoListItem value, int index,
             boolean isSelected, boolean cellHasFocus) {
+        TodoMetrics.count("renderer.getListCellRendererComponent");
         final var def = defaultListCellRenderer.getListCellRendererComponent(list, null, index, isSelected, cellHasFocus);
         boolean fast = list.getModel().getSize() > 1000;
 
         if (value != null && def instanceof JLabel jLabel) {
             String displayName = value.primitive().getDisplayName(DefaultNameFormatter.getInstance());
             String layerName = value.layer().getName();
-            jLabel.setText(displayName + " [" + layerName + "]");
+            final var state = list.getModel() instanceof TodoListModel model && index >= 0 && index < model.getSize()
+                    ? model.getState(index) : TodoItemState.TODO;
+            jLabel.setText(state == TodoItemState.TODO
+                    ? displayName + " [" + layerName + "]"
+                    : displayName + " [" + layerName + "] (" + state.getDisplayName() + ")");
             final var icon = !fast && (value.primitive() instanceof OsmPrimitive osmPrimitive)
                     ? ImageProvider.getPadded(osmPrimitive,
                         // Height of component no yet known, assume the default 16px.
@@ -0,0 +1,85 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+/**
+ * The selected indices of a {@link TodoListCore}.
+ * <p>
+ * The methods have the same meaning as in {@link javax.swing.ListSelectionModel}, so a Swing selection model can be
+ * adapted with a thin wrapper. {@link Indices} is a selection that does not need Swing.
+ */
+public interface TodoListSelection {
+    boolean isSelectionEmpty();
+
+    int getMinSelectionIndex();
+
+    int getMaxSelectionIndex();
+
+    boolean isSelectedIndex(int index);
+
+    void setSelectionInterval(int from, int to);
+
+    void clearSelection();
+
+    /**
+     * Set the selected indices, replacing the current selection
+     * @param indices The indices to select
+     */
+    void setSelectedIndices(IntStream indices);
+
+    /**
+     * Tell the selection that several changes follow, so listeners can wait for the last one
+     * @param adjusting {@code true} before the changes, {@code false} after them
+     */
+    default void setValueIsAdjusting(boolean adjusting) {
+        // Only used by selections with listeners
+    }
+
+    /**
+     * A selection that only stores the selected indices
+     */
+    final class Indices implements TodoListSelection {
+        private final BitSet selected = new BitSet();
+
+        @Override
+        public boolean isSelectionEmpty() {
+            return selected.isEmpty();
+        }
+
+        @Override
+        public int getMinSelectionIndex() {
+            return selected.nextSetBit(0);
+        }
+
+        @Override
+        public int getMaxSelectionIndex() {
+            return selected.length() - 1;
+        }
+
+        @Override
+        public boolean isSelectedIndex(int index) {
+            return index >= 0 && selected.get(index);
+        }
+
+        @Override
+        public void setSelectionInterval(int from, int to) {
+            selected.clear();
+            if (from >= 0 && to >= 0) {
+                selected.set(Math.min(from, to), Math.max(from, to) + 1);
+            }
+        }
+
+        @Override
+        public void clearSelection() {
+            selected.clear();
+        }
+
+        @Override
+        public void setSelectedIndices(IntStream indices) {
+            selected.clear();
+            indices.filter(i -> i >= 0).forEach(selected::set);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.gui.layer.AbstractOsmDataLayer;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+
+/**
+ * The public API of the todo list, for other plugins and scripts.
+ * <p>
+ * Every call is a single change of the todo list model, and fires a single event to the list view and to the
+ * {@link Listener}s of this service. The calls may be made from any thread, they are run in the EDT. The getters
+ * return snapshots that are taken in the EDT, so they can be used in any thread.
+ * <p>
+ * Example:
+ * <pre>
+ * TodoListService.getInstance().ifPresent(service -&gt; service.addItems(layer, ids));
+ * </pre>
+ */
+public final class TodoListService {
+    private static volatile TodoListService instance;
+
+    /**
+     * Notified when the todo list changes
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * Called in the EDT after the todo list changed. Several changes made in one EDT task are reported once.
+         * @param service The service of the changed todo list
+         */
+        void todoListChanged(TodoListService service);
+    }
+
+    private final TodoListModel model;
+    private final Runnable initializer;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private boolean notificationPending;
+
+    private final ListDataListener modelListener = new ListDataListener() {
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            scheduleNotification();
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            scheduleNotification();
+        }
+
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            scheduleNotification();
+        }
+    };
+
+    /**
+     * Create a new service
+     * @param model The model of the todo list
+     * @param initializer Called in the EDT before the model is changed, to register the listeners the model needs
+     */
+    TodoListService(TodoListModel model, Runnable initializer) {
+        this.model = Objects.requireNonNull(model, "model");
+        this.initializer = Objects.requireNonNull(initializer, "initializer");
+        model.addListDataListener(modelListener);
+    }
+
+    /**
+     * Get the service of the todo list dialog
+     * @return The service, or an empty optional if there is no todo list, e.g. because no map frame is shown
+     */
+    public static Optional<TodoListService> getInstance() {
+        return Optional.ofNullable(instance);
+    }
+
+    static void setInstance(TodoListService service) {
+        final var old = instance;
+        if (old != null && old != service) {
+            old.model.removeListDataListener(old.modelListener);
+        }
+        instance = service;
+    }
+
+    /**
+     * Add primitives to the todo list. Primitives that are done are moved back to the todo list.
+     * @param layer The layer of the primitives
+     * @param ids The ids of the primitives, ids that are not in the layer are ignored
+     * @return The number of primitives that were found in the layer
+     */
+    public int addItems(AbstractOsmDataLayer layer, Collection<? extends PrimitiveId> ids) {
+        return apply(layer, ids, model::addItems);
+    }
+
+    /**
+     * Mark primitives as done
+     * @param layer The layer of the primitives
+     * @param ids The ids of the primitives, ids that are not in the layer are ignored
+     * @return The number of primitives that were found in the layer
+     */
+    public int markItems(AbstractOsmDataLayer layer, Collection<? extends PrimitiveId> ids) {
+        return apply(layer, ids, model::markItems);
+    }
+
+    /**
+     * Remove primitives from the todo and done lists
+     * @param layer The layer of the primitives
+     * @param ids The ids of the primitives, ids that are not in the layer are ignored
+     * @return The number of primitives that were found in the layer
+     */
+    public int removeItems(AbstractOsmDataLayer layer, Collection<? extends PrimitiveId> ids) {
+        return apply(layer, ids, model::removeItems);
+    }
+
+    /**
+     * Get the primitives that are still to do, in list order
+     * @return A snapshot of the todo primitives
+     */
+    public Stream<IPrimitive> getTodoPrimitives() {
+        return inEdt(m -> m.getTodoList().stream().map(TodoListItem::primitive).toList()).stream();
+    }
+
+    /**
+     * Get the primitives that are done, in no particular order
+     * @return A snapshot of the done primitives
+     */
+    public Stream<IPrimitive> getDonePrimitives() {
+        return inEdt(m -> m.getDoneList().stream().map(TodoListItem::primitive).toList()).stream();
+    }
+
+    /**
+     * Get the number of primitives that are still to do
+     * @return The number of todo primitives
+     */
+    public int getTodoCount() {
+        return inEdt(TodoListModel::getSize);
+    }
+
+    /**
+     * Get the number of primitives that are done
+     * @return The number of done primitives
+     */
+    public int getDoneCount() {
+        return inEdt(TodoListModel::getDoneSize);
+    }
+
+    /**
+     * Add a listener that is notified when the todo list changes
+     * @param listener The listener to add
+     */
+    public void addListener(Listener listener) {
+        listeners.add(Objects.requireNonNull(listener, "listener"));
+    }
+
+    /**
+     * Remove a listener
+     * @param listener The listener to remove
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private int apply(AbstractOsmDataLayer layer, Collection<? extends PrimitiveId> ids, Consumer<Collection<TodoListItem>> change) {
+        Objects.requireNonNull(layer, "layer");
+        if (ids == null || ids.isEmpty()) {
+            return 0;
+        }
+        return inEdt(m -> {
+            initializer.run();
+            final var dataSet = layer.getDataSet();
+            final var items = new ArrayList<TodoListItem>(ids.size());
+            for (var id : ids) {
+                final IPrimitive primitive = dataSet.getPrimitiveById(id);
+                if (primitive != null) {
+                    items.add(new TodoListItem(layer, primitive));
+                }
+            }
+            try (var timer = TodoMetrics.time("service.apply")) {
+                timer.items(items.size());
+                m.batch(() -> change.accept(items));
+            }
+            return items.size();
+        });
+    }
+
+    private <T> T inEdt(Function<TodoListModel, T> task) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            return task.apply(model);
+        }
+        final var result = new AtomicReference<T>();
+        GuiHelper.runInEDTAndWait(() -> result.set(task.apply(model)));
+        return result.get();
+    }
+
+    private void scheduleNotification() {
+        if (notificationPending || listeners.isEmpty()) {
+            return;
+        }
+        notificationPending = true;
+        SwingUtilities.invokeLater(() -> {
+            notificationPending = false;
+            listeners.forEach(listener -> listener.todoListChanged(this));
+        });
+    }
+}
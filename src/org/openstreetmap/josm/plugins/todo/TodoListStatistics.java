@@ -0,0 +1,216 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.gui.layer.AbstractOsmDataLayer;
+
+/**
+ * Progress counters for a {@link TodoListModel}.
+ * <p>
+ * The counters are updated by the model on every mutation, so reading them never requires a scan of the lists.
+ */
+final class TodoListStatistics {
+    /** The window used to compute the number of items done per minute */
+    private static final long RATE_WINDOW = TimeUnit.MINUTES.toMillis(5);
+    /** The granularity of the rate buckets */
+    private static final long RATE_BUCKET = TimeUnit.SECONDS.toMillis(1);
+
+    /**
+     * Counters for a group of items
+     */
+    static final class Counter {
+        private int total;
+        private int done;
+
+        /**
+         * Get the total number of items in the group
+         * @return The number of todo and done items
+         */
+        int getTotal() {
+            return total;
+        }
+
+        /**
+         * Get the number of done items in the group
+         * @return The number of done items
+         */
+        int getDone() {
+            return done;
+        }
+    }
+
+    private final Counter all = new Counter();
+    private final Map<AbstractOsmDataLayer, Counter> perLayer = new LinkedHashMap<>();
+    private final Map<OsmPrimitiveType, Counter> perType = new EnumMap<>(OsmPrimitiveType.class);
+    /** Buckets of {timestamp, count} for items marked as done */
+    private final Deque<long[]> doneRate = new ArrayDeque<>();
+
+    /**
+     * Record an item that was added to the model
+     * @param item The added item
+     * @param done {@code true} if the item was added to the done list
+     */
+    void added(TodoListItem item, boolean done) {
+        final int d = done ? 1 : 0;
+        for (var counter : counters(item)) {
+            counter.total++;
+            counter.done += d;
+        }
+    }
+
+    /**
+     * Record an item that was removed from the model
+     * @param item The removed item
+     * @param done {@code true} if the item was removed from the done list
+     */
+    void removed(TodoListItem item, boolean done) {
+        final int d = done ? 1 : 0;
+        for (var counter : counters(item)) {
+            counter.total--;
+            counter.done -= d;
+        }
+        final var layerCounter = perLayer.get(item.layer());
+        if (layerCounter != null && layerCounter.total <= 0) {
+            perLayer.remove(item.layer());
+        }
+    }
+
+    /**
+     * Record an item that was moved from the todo list to the done list
+     * @param item The marked item
+     */
+    void marked(TodoListItem item) {
+        remarked(item);
+        recordDone(1);
+    }
+
+    /**
+     * Record an item that was moved back to the done list, e.g. by a redo. This does not count for the done rate.
+     * @param item The marked item
+     */
+    void remarked(TodoListItem item) {
+        for (var counter : counters(item)) {
+            counter.done++;
+        }
+    }
+
+    /**
+     * Record an item that was moved from the done list to the todo list
+     * @param item The unmarked item
+     */
+    void unmarked(TodoListItem item) {
+        for (var counter : counters(item)) {
+            counter.done--;
+        }
+    }
+
+    /**
+     * Record that all items were marked as done
+     */
+    void markedAll() {
+        recordDone(all.total - all.done);
+        setAllDone(true);
+    }
+
+    /**
+     * Record that all items were moved back to the todo list
+     */
+    void unmarkedAll() {
+        setAllDone(false);
+    }
+
+    /**
+     * Reset all counters
+     */
+    void clear() {
+        all.total = 0;
+        all.done = 0;
+        perLayer.clear();
+        perType.clear();
+    }
+
+    /**
+     * Get the counters for all items
+     * @return The counters
+     */
+    Counter getAll() {
+        return all;
+    }
+
+    /**
+     * Get the counters per layer
+     * @return An unmodifiable view of the per layer counters
+     */
+    Map<AbstractOsmDataLayer, Counter> getPerLayer() {
+        return Collections.unmodifiableMap(perLayer);
+    }
+
+    /**
+     * Get the counters per primitive type
+     * @return An unmodifiable view of the per type counters
+     */
+    Map<OsmPrimitiveType, Counter> getPerType() {
+        return Collections.unmodifiableMap(perType);
+    }
+
+    /**
+     * Get the number of items marked as done per minute, averaged over the last few minutes
+     * @return The number of items per minute
+     */
+    double getItemsPerMinute() {
+        final long now = System.currentTimeMillis();
+        expireRate(now);
+        if (doneRate.isEmpty()) {
+            return 0;
+        }
+        long count = 0;
+        for (var bucket : doneRate) {
+            count += bucket[1];
+        }
+        // Use the elapsed time since the first bucket until the window is full, so the rate is meaningful right away
+        final long elapsed = Math.max(TimeUnit.MINUTES.toMillis(1), now - doneRate.getFirst()[0]);
+        return count * (double) TimeUnit.MINUTES.toMillis(1) / Math.min(elapsed, RATE_WINDOW);
+    }
+
+    private Counter[] counters(TodoListItem item) {
+        return new Counter[] {
+                all,
+                perLayer.computeIfAbsent(item.layer(), l -> new Counter()),
+                perType.computeIfAbsent(item.primitive().getType(), t -> new Counter())
+        };
+    }
+
+    private void setAllDone(boolean done) {
+        all.done = done ? all.total : 0;
+        perLayer.values().forEach(counter -> counter.done = done ? counter.total : 0);
+        perType.values().forEach(counter -> counter.done = done ? counter.total : 0);
+    }
+
+    private void recordDone(int count) {
+        if (count <= 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        expireRate(now);
+        final var last = doneRate.peekLast();
+        if (last != null && now - last[0] < RATE_BUCKET) {
+            last[1] += count;
+        } else {
+            doneRate.addLast(new long[] {now, count});
+        }
+    }
+
+    private void expireRate(long now) {
+        while (!doneRate.isEmpty() && now - doneRate.getFirst()[0] > RATE_WINDOW) {
+            doneRate.removeFirst();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.openstreetmap.josm.tools.I18n.marktr;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.preferences.NamedColorProperty;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.MapView;
+import org.openstreetmap.josm.gui.layer.MapViewPaintable;
+
+/**
+ * Draws markers for the todo and done items on the map.
+ * <p>
+ * The items are taken from the spatial indexes of the {@link TodoListGeometry} of the model, so painting only visits
+ * the items in the viewport. Items that are too close together to be told apart are drawn as a single marker.
+ */
+class TodoMapOverlay implements MapViewPaintable, ListDataListener {
+    private static final NamedColorProperty TODO_COLOR = new NamedColorProperty(marktr("todo: todo item"), new Color(0xff8c00));
+    private static final NamedColorProperty DONE_COLOR = new NamedColorProperty(marktr("todo: done item"), new Color(0x32cd32));
+    /** The size of a marker, in pixels */
+    private static final int MARKER_SIZE = 8;
+    /** Items closer than this many pixels are drawn as a single marker */
+    private static final int CLUSTER_PIXELS = 12;
+
+    private final TodoListModel model;
+
+    /**
+     * Create a new overlay
+     * @param model The model to draw the items of
+     */
+    TodoMapOverlay(TodoListModel model) {
+        this.model = model;
+    }
+
+    @Override
+    public void paint(Graphics2D g, MapView mv, Bounds bbox) {
+        try (var timer = TodoMetrics.time("overlay.paint")) {
+            final var geometry = model.getGeometry();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            draw(g, mv, geometry.getIndex(true), DONE_COLOR.get());
+            draw(g, mv, geometry.getIndex(false), TODO_COLOR.get());
+        }
+    }
+
+    private static void draw(Graphics2D g, MapView mv, TodoSpatialIndex index, Color color) {
+        final var bounds = mv.getProjectionBounds();
+        // Include the markers that are partly visible
+        final var margin = mv.getScale() * MARKER_SIZE;
+        final var fill = new Color(color.getRed(), color.getGreen(), color.getBlue(), 96);
+        index.visit(bounds.minEast - margin, bounds.minNorth - margin, bounds.maxEast + margin, bounds.maxNorth + margin,
+                mv.getScale() * CLUSTER_PIXELS, new TodoSpatialIndex.Visitor() {
+                    @Override
+                    public void item(TodoListItem item, double east, double north) {
+                        if (!item.primitive().isDeleted()) {
+                            marker(east, north, MARKER_SIZE);
+                        }
+                    }
+
+                    @Override
+                    public void cluster(int count, double east, double north) {
+                        marker(east, north, MARKER_SIZE + (int) (3 * Math.log10(count)));
+                    }
+
+                    private void marker(double east, double north, int size) {
+                        final var point = mv.getPoint2D(new EastNorth(east, north));
+                        final var x = (int) point.getX() - size / 2;
+                        final var y = (int) point.getY() - size / 2;
+                        g.setColor(fill);
+                        g.fillOval(x, y, size, size);
+                        g.setColor(color);
+                        g.drawOval(x, y, size, size);
+                    }
+                });
+    }
+
+    private static void repaint() {
+        if (MainApplication.isDisplayingMapView()) {
+            MainApplication.getMap().mapView.repaint();
+        }
+    }
+
+    @Override
+    public void intervalAdded(ListDataEvent e) {
+        repaint();
+    }
+
+    @Override
+    public void intervalRemoved(ListDataEvent e) {
+        repaint();
+    }
+
+    @Override
+    public void contentsChanged(ListDataEvent e) {
+        repaint();
+    }
+}
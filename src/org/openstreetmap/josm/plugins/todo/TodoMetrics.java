@@ -0,0 +1,148 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low overhead timers and counters for the todo list operations.
+ * <p>
+ * Each operation keeps a call count, the total and maximum time spent and the number of items it processed.
+ * This is used to find out which part of the todo list is slow when the dialog becomes sluggish.
+ */
+final class TodoMetrics {
+    private static final Map<String, Metric> METRICS = new ConcurrentHashMap<>();
+    private static volatile long resetTime = System.nanoTime();
+
+    private TodoMetrics() {
+        // Hide the constructor
+    }
+
+    /**
+     * The statistics for one operation
+     */
+    static final class Metric {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder items = new LongAdder();
+        private final LongAccumulator maxItems = new LongAccumulator(Math::max, 0);
+
+        void record(long elapsed, long itemCount) {
+            calls.increment();
+            nanos.add(elapsed);
+            maxNanos.accumulate(elapsed);
+            items.add(itemCount);
+            maxItems.accumulate(itemCount);
+        }
+
+        long getCalls() {
+            return calls.sum();
+        }
+
+        long getItems() {
+            return items.sum();
+        }
+    }
+
+    /**
+     * A running timer, to be used in a try-with-resources statement
+     */
+    static final class Timer implements AutoCloseable {
+        private final Metric metric;
+        private final long start = System.nanoTime();
+        private long items;
+
+        private Timer(Metric metric) {
+            this.metric = metric;
+        }
+
+        /**
+         * Set the number of items processed by the operation
+         * @param items The number of items
+         * @return this, for easy chaining
+         */
+        Timer items(long items) {
+            this.items = items;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            metric.record(System.nanoTime() - start, items);
+        }
+    }
+
+    /**
+     * Start timing an operation
+     * @param operation The name of the operation
+     * @return The timer to close when the operation is finished
+     */
+    static Timer time(String operation) {
+        return new Timer(metric(operation));
+    }
+
+    /**
+     * Count an occurrence of an event that is too frequent to be timed
+     * @param event The name of the event
+     */
+    static void count(String event) {
+        metric(event).calls.increment();
+    }
+
+    /**
+     * Get the statistics for an operation
+     * @param operation The name of the operation
+     * @return The statistics, or {@code null} if the operation was never recorded
+     */
+    static Metric get(String operation) {
+        return METRICS.get(operation);
+    }
+
+    /**
+     * Reset all statistics
+     */
+    static void reset() {
+        METRICS.clear();
+        resetTime = System.nanoTime();
+    }
+
+    /**
+     * Get a human readable report of all statistics, sorted by operation name
+     * @return The report
+     */
+    static String getReport() {
+        final double seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - resetTime));
+        final var builder = new StringBuilder(256)
+                .append("Todo list metrics, ").append(Instant.now()).append(", over ").append((long) seconds).append(" s\n")
+                .append(String.format(Locale.ROOT, "%-36s %10s %10s %12s %10s %12s %10s%n",
+                        "operation", "calls", "calls/s", "total ms", "max ms", "items", "max items"));
+        new TreeMap<>(METRICS).forEach((name, metric) -> builder.append(String.format(Locale.ROOT,
+                "%-36s %10d %10.1f %12.1f %10.1f %12d %10d%n", name, metric.getCalls(), metric.getCalls() / seconds,
+                metric.nanos.sum() / 1e6, metric.maxNanos.get() / 1e6, metric.getItems(), metric.maxItems.get())));
+        return builder.toString();
+    }
+
+    /**
+     * Write the report to a file, e.g. for attaching it to a bug report
+     * @param file The file to write to
+     * @throws IOException if the file could not be written
+     */
+    static void export(Path file) throws IOException {
+        Files.writeString(file, getReport(), StandardCharsets.UTF_8);
+    }
+
+    private static Metric metric(String name) {
+        return METRICS.computeIfAbsent(name, n -> new Metric());
+    }
+}
@@ -0,0 +1,78 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.io.IOException;
+import java.io.Serial;
+
+import javax.swing.JButton;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.widgets.FileChooserManager;
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * A debug panel showing the {@link TodoMetrics} report
+ */
+class TodoMetricsPanel extends JPanel {
+    @Serial
+    private static final long serialVersionUID = 6107366406591935064L;
+
+    private final JTextArea report = new JTextArea();
+
+    /**
+     * Create a new metrics panel
+     */
+    TodoMetricsPanel() {
+        super(new BorderLayout());
+        report.setEditable(false);
+        report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, report.getFont().getSize()));
+        final var scrollPane = new JScrollPane(report);
+        scrollPane.setPreferredSize(new Dimension(800, 300));
+        add(scrollPane, BorderLayout.CENTER);
+
+        final var buttons = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        final var refresh = new JButton(tr("Refresh"));
+        refresh.addActionListener(e -> refresh());
+        buttons.add(refresh);
+        final var reset = new JButton(tr("Reset"));
+        reset.addActionListener(e -> {
+            TodoMetrics.reset();
+            refresh();
+        });
+        buttons.add(reset);
+        final var export = new JButton(tr("Export..."));
+        export.addActionListener(e -> export());
+        buttons.add(export);
+        add(buttons, BorderLayout.NORTH);
+        refresh();
+    }
+
+    private void refresh() {
+        report.setText(TodoMetrics.getReport());
+        report.setCaretPosition(0);
+    }
+
+    private void export() {
+        final var fileChooser = new FileChooserManager(false, "todo.metrics.lastDirectory").openFileChooser();
+        if (fileChooser == null) {
+            return;
+        }
+        try {
+            TodoMetrics.export(fileChooser.getSelectedFile().toPath());
+        } catch (IOException e) {
+            Logging.error(e);
+            JOptionPane.showMessageDialog(MainApplication.getMainFrame(),
+                    tr("Could not write the metrics: {0}", e.getMessage()), tr("Error"), JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.IRelation;
+import org.openstreetmap.josm.data.osm.IWay;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.data.preferences.DoubleProperty;
+import org.openstreetmap.josm.data.preferences.ListProperty;
+import org.openstreetmap.josm.data.validation.Severity;
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * The scores that order the todo items when they are worked on by priority.
+ * <p>
+ * A score only depends on the item and its own object, so the model only needs to rescore the items of changed
+ * objects.
+ */
+final class TodoPriority {
+    /** Work on the todo items by priority instead of in list order */
+    static final BooleanProperty ENABLED = new BooleanProperty("todo.priority.enabled", false);
+    /** The scores of tags, as {@code key:score} or {@code key=value:score} */
+    static final ListProperty TAG_SCORES = new ListProperty("todo.priority.tags", List.of("fixme:10", "FIXME:10"));
+    /** The score of a validator error, a warning gets two thirds of it and other issues one third */
+    static final DoubleProperty SEVERITY_WEIGHT = new DoubleProperty("todo.priority.severity-weight", 30);
+    /** The score per way node or relation member */
+    static final DoubleProperty SIZE_WEIGHT = new DoubleProperty("todo.priority.size-weight", 0);
+    /** The score per year since the last edit of the object */
+    static final DoubleProperty AGE_WEIGHT = new DoubleProperty("todo.priority.age-weight", 0);
+
+    private static final double SECONDS_PER_YEAR = 365.25 * 24 * 60 * 60;
+
+    private record TagScore(String key, String value, double score) {
+        boolean matches(IPrimitive primitive) {
+            final var actual = primitive.get(key);
+            return actual != null && (value == null || value.equals(actual));
+        }
+    }
+
+    private final Map<TodoListItem, Severity> severities = new HashMap<>();
+    private List<TagScore> tagScores = List.of();
+    private double severityWeight;
+    private double sizeWeight;
+    private double ageWeight;
+    private long now;
+
+    /**
+     * Read the rules from the preferences. This is not done for every score, since all items are scored at once.
+     */
+    void reload() {
+        final var scores = new ArrayList<TagScore>();
+        for (var entry : TAG_SCORES.get()) {
+            final var separator = entry.lastIndexOf(':');
+            try {
+                final var tag = entry.substring(0, Math.max(0, separator));
+                final var equals = tag.indexOf('=');
+                final var score = Double.parseDouble(entry.substring(separator + 1));
+                if (!tag.isEmpty())
+                    scores.add(new TagScore(equals < 0 ? tag : tag.substring(0, equals), equals < 0 ? null : tag.substring(equals + 1), score));
+            } catch (NumberFormatException e) {
+                Logging.warn("Ignoring invalid todo priority rule " + entry);
+            }
+        }
+        tagScores = List.copyOf(scores);
+        severityWeight = SEVERITY_WEIGHT.get();
+        sizeWeight = SIZE_WEIGHT.get();
+        ageWeight = AGE_WEIGHT.get();
+        now = System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * Remember the validator severity of an item
+     * @param item The item
+     * @param severity The most severe issue of the item
+     */
+    void setSeverity(TodoListItem item, Severity severity) {
+        severities.merge(item, severity, (a, b) -> a.getLevel() <= b.getLevel() ? a : b);
+    }
+
+    /**
+     * Forget the data of an item that was removed from the model
+     * @param item The item
+     */
+    void forget(TodoListItem item) {
+        severities.remove(item);
+    }
+
+    /**
+     * Forget the data of items that were removed from the model
+     * @param items The items
+     */
+    void forget(Collection<TodoListItem> items) {
+        if (!severities.isEmpty())
+            items.forEach(severities::remove);
+    }
+
+    /**
+     * Get the score of an item
+     * @param item The item
+     * @return The score, higher scores come first
+     */
+    double score(TodoListItem item) {
+        final var primitive = item.primitive();
+        var score = 0.0;
+        for (var tagScore : tagScores) {
+            if (tagScore.matches(primitive))
+                score += tagScore.score();
+        }
+        final var severity = severities.get(item);
+        if (severity != null)
+            score += severityWeight * (Severity.OTHER.getLevel() + 1 - severity.getLevel()) / Severity.OTHER.getLevel();
+        if (sizeWeight != 0) {
+            if (primitive instanceof IWay<?> way)
+                score += sizeWeight * way.getNodesCount();
+            else if (primitive instanceof IRelation<?> relation)
+                score += sizeWeight * relation.getMembersCount();
+        }
+        if (ageWeight != 0 && primitive.getRawTimestamp() > 0)
+            score += ageWeight * (now - primitive.getRawTimestamp()) / SECONDS_PER_YEAR;
+        return score;
+    }
+}
@@ -0,0 +1,201 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * The todo items ordered by priority, in an indexed binary heap.
+ * <p>
+ * The heap stores the position of every item, so an item can be removed or rescored without searching for it. The
+ * first item is the one that was passed least recently, and of those the one with the highest score. Passing an item
+ * moves it behind all items, so passing goes round all items in priority order.
+ */
+final class TodoPriorityQueue {
+    private TodoListItem[] items;
+    private double[] scores;
+    /** The pass number of every item, 0 if it was never passed */
+    private long[] passes;
+    private final Map<TodoListItem, Integer> positions;
+    private int size;
+    private long passCount;
+
+    private TodoPriorityQueue(int capacity) {
+        items = new TodoListItem[Math.max(16, capacity)];
+        scores = new double[items.length];
+        passes = new long[items.length];
+        positions = new HashMap<>(Math.max(16, capacity * 4 / 3 + 1));
+    }
+
+    /**
+     * Create a queue of items
+     * @param items The items
+     * @param scorer The score of an item, higher scores come first
+     * @return The queue, built in linear time
+     */
+    static TodoPriorityQueue of(Collection<TodoListItem> items, ToDoubleFunction<TodoListItem> scorer) {
+        final var queue = new TodoPriorityQueue(items.size());
+        for (var item : items) {
+            if (!queue.positions.containsKey(item)) {
+                queue.items[queue.size] = item;
+                queue.scores[queue.size] = scorer.applyAsDouble(item);
+                queue.positions.put(item, queue.size);
+                queue.size++;
+            }
+        }
+        for (var i = queue.size / 2 - 1; i >= 0; i--) {
+            queue.siftDown(i);
+        }
+        return queue;
+    }
+
+    /**
+     * Get the first item
+     * @return The item with the highest priority, or {@code null} if the queue is empty
+     */
+    TodoListItem peek() {
+        return size == 0 ? null : items[0];
+    }
+
+    boolean contains(TodoListItem item) {
+        return positions.containsKey(item);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Add an item, or rescore it if it is already in the queue
+     * @param item The item
+     * @param score The score of the item
+     */
+    void add(TodoListItem item, double score) {
+        if (positions.containsKey(item)) {
+            update(item, score);
+            return;
+        }
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+            passes = Arrays.copyOf(passes, size * 2);
+        }
+        items[size] = item;
+        scores[size] = score;
+        passes[size] = 0;
+        positions.put(item, size);
+        siftUp(size++);
+    }
+
+    /**
+     * Remove an item
+     * @param item The item
+     */
+    void remove(TodoListItem item) {
+        final Integer position = positions.remove(item);
+        if (position == null)
+            return;
+        size--;
+        if (position != size) {
+            move(size, position);
+            if (!siftUp(position))
+                siftDown(position);
+        }
+        items[size] = null;
+    }
+
+    /**
+     * Change the score of an item
+     * @param item The item
+     * @param score The new score
+     */
+    void update(TodoListItem item, double score) {
+        final Integer position = positions.get(item);
+        if (position == null || Double.compare(scores[position], score) == 0)
+            return;
+        scores[position] = score;
+        if (!siftUp(position))
+            siftDown(position);
+    }
+
+    /**
+     * Move an item behind all other items
+     * @param item The item that was passed
+     */
+    void pass(TodoListItem item) {
+        final Integer position = positions.get(item);
+        if (position != null) {
+            passes[position] = ++passCount;
+            siftDown(position);
+        }
+    }
+
+    /**
+     * Remove all items
+     */
+    void clear() {
+        Arrays.fill(items, 0, size, null);
+        positions.clear();
+        size = 0;
+    }
+
+    /**
+     * Check if the item at position {@code a} comes before the item at position {@code b}
+     */
+    private boolean before(int a, int b) {
+        if (passes[a] != passes[b])
+            return passes[a] < passes[b];
+        return scores[a] > scores[b];
+    }
+
+    private boolean siftUp(int position) {
+        var moved = false;
+        while (position > 0) {
+            final var parent = (position - 1) / 2;
+            if (!before(position, parent))
+                break;
+            swap(position, parent);
+            position = parent;
+            moved = true;
+        }
+        return moved;
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            final var left = 2 * position + 1;
+            if (left >= size)
+                return;
+            final var right = left + 1;
+            final var child = right < size && before(right, left) ? right : left;
+            if (!before(child, position))
+                return;
+            swap(position, child);
+            position = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        final var item = items[a];
+        final var score = scores[a];
+        final var pass = passes[a];
+        move(b, a);
+        items[b] = item;
+        scores[b] = score;
+        passes[b] = pass;
+        positions.put(item, b);
+    }
+
+    /**
+     * Copy the entry at {@code from} to {@code to}
+     */
+    private void move(int from, int to) {
+        items[to] = items[from];
+        scores[to] = scores[from];
+        passes[to] = passes[from];
+        positions.put(items[to], to);
+    }
+}
@@ -0,0 +1,145 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
+import org.openstreetmap.josm.data.validation.OsmValidator;
+import org.openstreetmap.josm.data.validation.Test;
+import org.openstreetmap.josm.gui.PleaseWaitRunnable;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Runs the enabled validator tests over done items and moves the items that still have errors back to the todo list.
+ * <p>
+ * The tests run in parallel in worker threads. Each test instance keeps state while it runs, so every test is used by a
+ * single worker only. The failing items are moved back in a single change of the model.
+ */
+class TodoReverifyTask extends PleaseWaitRunnable {
+    /** The number of worker threads */
+    static final IntegerProperty THREADS = new IntegerProperty("todo.reverify.threads", Runtime.getRuntime().availableProcessors());
+
+    private final TodoListModel model;
+    private final Map<IPrimitive, TodoListItem> items = new HashMap<>();
+    private final Collection<Test> tests;
+    private volatile boolean canceled;
+
+    /**
+     * Create a new task that runs the enabled validator tests
+     * @param model The model to update
+     * @param doneItems The done items to verify
+     */
+    TodoReverifyTask(TodoListModel model, Collection<TodoListItem> doneItems) {
+        this(model, doneItems, OsmValidator.getEnabledTests(false), null);
+    }
+
+    /**
+     * Create a new task
+     * @param model The model to update
+     * @param doneItems The done items to verify
+     * @param tests The tests to run
+     * @param progressMonitor The progress monitor, or {@code null} to show the progress in a dialog
+     */
+    TodoReverifyTask(TodoListModel model, Collection<TodoListItem> doneItems, Collection<Test> tests,
+            ProgressMonitor progressMonitor) {
+        super(tr("Verifying done items of the todo list"), progressMonitor, false);
+        this.model = model;
+        this.tests = tests;
+        doneItems.forEach(item -> items.put(item.primitive(), item));
+    }
+
+    @Override
+    protected void cancel() {
+        canceled = true;
+    }
+
+    @Override
+    protected void realRun() throws InterruptedException {
+        final List<OsmPrimitive> primitives = new ArrayList<>(items.size());
+        items.keySet().stream()
+                .filter(OsmPrimitive.class::isInstance)
+                .map(OsmPrimitive.class::cast)
+                .filter(OsmPrimitive::isUsable)
+                .forEach(primitives::add);
+        if (primitives.isEmpty() || tests.isEmpty()) {
+            return;
+        }
+        final var monitor = getProgressMonitor();
+        monitor.setTicksCount(tests.size());
+        final var executor = Executors.newFixedThreadPool(Math.max(1, Math.min(THREADS.get(), tests.size())),
+                Utils.newThreadFactory("todo-reverify-%d", Thread.NORM_PRIORITY));
+        final Set<TodoListItem> failed = new HashSet<>();
+        try (var timer = TodoMetrics.time("reverify.run")) {
+            timer.items(primitives.size());
+            final List<Future<Set<TodoListItem>>> results = new ArrayList<>(tests.size());
+            for (var test : tests) {
+                results.add(executor.submit(() -> runTest(test, primitives)));
+            }
+            for (var result : results) {
+                failed.addAll(result.get());
+                synchronized (monitor) {
+                    monitor.worked(1);
+                }
+            }
+        } catch (ExecutionException e) {
+            Logging.error(e);
+            return;
+        } finally {
+            executor.shutdownNow();
+        }
+        if (canceled || failed.isEmpty()) {
+            return;
+        }
+        GuiHelper.runInEDT(() -> {
+            // Only move items that are still done, the list may have changed while the tests were running
+            final var reopen = failed.stream().filter(model.getDoneList()::contains).toList();
+            model.batch(() -> model.addItems(reopen));
+        });
+    }
+
+    private Set<TodoListItem> runTest(Test test, Collection<OsmPrimitive> primitives) {
+        final Set<TodoListItem> failed = new HashSet<>();
+        if (canceled) {
+            return failed;
+        }
+        test.setBeforeUpload(false);
+        test.setPartialSelection(true);
+        test.startTest(NullProgressMonitor.INSTANCE);
+        test.visit(primitives);
+        test.endTest();
+        for (var error : test.getErrors()) {
+            if (!error.isIgnored()) {
+                for (var primitive : error.getPrimitives()) {
+                    final var item = items.get(primitive);
+                    if (item != null) {
+                        failed.add(item);
+                    }
+                }
+            }
+        }
+        test.clear();
+        return failed;
+    }
+
+    @Override
+    protected void finish() {
+        // Nothing to do, the items are moved back when all tests are done
+    }
+}
@@ -0,0 +1,396 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * A persistent set of the objects that were marked as done, by type, id and version.
+ * <p>
+ * The keys are stored in an open addressing hash table in a memory mapped file, so only the pages that are used are
+ * loaded. A bloom filter in front of the table answers most lookups of objects that were never reviewed without
+ * touching the table. New objects, and objects with very large ids or versions, are never stored.
+ * <p>
+ * The file is opened on first use and locked, so that only one JOSM instance uses it. If it cannot be used, the store
+ * behaves as an empty store.
+ * <p>
+ * A mapping is only released by the garbage collector, and some systems cannot delete or replace a file while it is
+ * mapped. So the file is never replaced: the table is grown and cleared in place, in a larger mapping of the same file.
+ */
+final class TodoReviewedStore implements AutoCloseable {
+    /** Skip objects that were already reviewed in the same version when adding objects to the list */
+    static final BooleanProperty SKIP_REVIEWED = new BooleanProperty("todo.reviewed.skip", true);
+
+    private static final int MAGIC = 0x544f444f;
+    private static final int FORMAT = 1;
+    /** magic, format, capacity, live entries, used slots */
+    private static final int HEADER_SIZE = 32;
+    private static final int MIN_CAPACITY = 1 << 16;
+    /** The largest table that fits in a single mapping together with its bloom filter */
+    private static final int MAX_CAPACITY = 1 << 27;
+    private static final int BLOOM_HASHES = 4;
+    private static final long EMPTY = 0;
+    private static final long DELETED = -1;
+    private static final byte[] ZEROS = new byte[1 << 16];
+
+    private final Path file;
+    private boolean opened;
+    private FileChannel channel;
+    /** Set when the file is locked by another instance, so it must not be deleted */
+    private boolean lockedElsewhere;
+    private MappedByteBuffer buffer;
+    private LongBuffer bloom;
+    private LongBuffer table;
+    private int capacity;
+    private int live;
+    private int used;
+    /** Set when the table could not be rebuilt, so the rebuild is not tried again on every add */
+    private boolean rebuildFailed;
+
+    /**
+     * Create a new store
+     * @param file The file of the store, created when it does not exist
+     */
+    TodoReviewedStore(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Check if an object was reviewed in its current version
+     * @param primitive The object
+     * @return {@code true} if the object was marked as done in this version
+     */
+    boolean contains(IPrimitive primitive) {
+        final var key = key(primitive);
+        return key != EMPTY && open() && contains(key);
+    }
+
+    /**
+     * Remember that an object was reviewed in its current version
+     * @param primitive The object
+     */
+    void add(IPrimitive primitive) {
+        final var key = key(primitive);
+        if (key == EMPTY || !open() || contains(key) || !hasRoom())
+            return;
+        final var hash = hash(key);
+        var slot = (int) hash & (capacity - 1);
+        while (table.get(slot) != EMPTY && table.get(slot) != DELETED) {
+            slot = (slot + 1) & (capacity - 1);
+        }
+        if (table.get(slot) == EMPTY)
+            used++;
+        table.put(slot, key);
+        live++;
+        addToBloom(hash);
+        writeHeader();
+    }
+
+    /**
+     * Make room for a batch of adds, so that the table grows at most once for the batch and not in between the adds
+     * @param count The number of objects that will be added
+     */
+    void reserve(int count) {
+        if (count <= 0 || !open() || rebuildFailed || (used + (long) count) * 2 <= capacity)
+            return;
+        var newCapacity = capacity;
+        while (newCapacity < MAX_CAPACITY && (live + (long) count) * 2 > newCapacity) {
+            newCapacity *= 2;
+        }
+        rebuild(newCapacity);
+    }
+
+    /**
+     * Forget that an object was reviewed in its current version
+     * @param primitive The object
+     */
+    void remove(IPrimitive primitive) {
+        final var key = key(primitive);
+        if (key == EMPTY || !open())
+            return;
+        final var slot = find(key);
+        if (slot >= 0) {
+            // The slot stays used so that the probe sequences of other keys are not broken
+            table.put(slot, DELETED);
+            live--;
+            writeHeader();
+        }
+    }
+
+    /**
+     * Get the number of reviewed objects
+     * @return The number of keys in the store
+     */
+    int size() {
+        return open() ? live : 0;
+    }
+
+    /**
+     * Forget all reviewed objects. The file keeps its size.
+     */
+    void clear() {
+        if (open()) {
+            reset();
+            writeHeader();
+            rebuildFailed = false;
+            return;
+        }
+        if (lockedElsewhere)
+            return;
+        // The file cannot be used, start over with a new file
+        close();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            Logging.error(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (channel != null) {
+            if (buffer != null)
+                buffer.force();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Logging.error(e);
+            }
+        }
+        channel = null;
+        buffer = null;
+        bloom = null;
+        table = null;
+        opened = false;
+    }
+
+    private boolean contains(long key) {
+        final var hash = hash(key);
+        return inBloom(hash) && find(key) >= 0;
+    }
+
+    private int find(long key) {
+        var slot = (int) hash(key) & (capacity - 1);
+        for (var probes = 0; probes < capacity; probes++) {
+            final var value = table.get(slot);
+            if (value == key)
+                return slot;
+            if (value == EMPTY)
+                return -1;
+            slot = (slot + 1) & (capacity - 1);
+        }
+        return -1;
+    }
+
+    private boolean open() {
+        if (opened)
+            return channel != null;
+        opened = true;
+        try {
+            Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // The lock is released when the channel is closed
+            if (channel.tryLock() == null) {
+                Logging.warn("The todo list review store " + file + " is used by another JOSM instance");
+                lockedElsewhere = true;
+                close();
+                opened = true;
+                return false;
+            }
+            if (channel.size() >= HEADER_SIZE) {
+                final var header = ByteBuffer.allocate(HEADER_SIZE);
+                channel.read(header, 0);
+                header.flip();
+                if (header.getInt() == MAGIC && header.getInt() == FORMAT) {
+                    map(header.getInt());
+                    live = header.getInt();
+                    used = header.getInt();
+                    return true;
+                }
+                Logging.warn("Ignoring invalid todo list review store " + file);
+                channel.truncate(0);
+            }
+            map(MIN_CAPACITY);
+            live = 0;
+            used = 0;
+            writeHeader();
+            return true;
+        } catch (OverlappingFileLockException e) {
+            Logging.warn("The todo list review store " + file + " is already used");
+            lockedElsewhere = true;
+            close();
+            opened = true;
+            return false;
+        } catch (IOException | IllegalArgumentException e) {
+            Logging.error(e);
+            close();
+            opened = true;
+            return false;
+        }
+    }
+
+    private void map(int newCapacity) throws IOException {
+        if (Integer.bitCount(newCapacity) != 1 || newCapacity < MIN_CAPACITY || newCapacity > MAX_CAPACITY)
+            throw new IOException("Invalid capacity " + newCapacity + " in " + file);
+        final var bloomLongs = newCapacity / 8;
+        // Mapping a region that is larger than the file grows the file
+        final var mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + 8L * (bloomLongs + newCapacity));
+        buffer = mapped;
+        bloom = mapped.slice(HEADER_SIZE, 8 * bloomLongs).asLongBuffer();
+        table = mapped.slice(HEADER_SIZE + 8 * bloomLongs, 8 * newCapacity).asLongBuffer();
+        capacity = newCapacity;
+    }
+
+    /**
+     * Make room for one more key, by rebuilding the table when it is half full
+     * @return {@code true} if a key can be added
+     */
+    private boolean hasRoom() {
+        if ((used + 1L) * 2 <= capacity)
+            return true;
+        if (!rebuildFailed) {
+            if ((live + 1L) * 4 <= capacity) {
+                // Most of the used slots are tombstones, which are dropped by rehashing at the same size
+                rebuild(capacity);
+            } else if (capacity < MAX_CAPACITY) {
+                rebuild(capacity * 2);
+            }
+            if ((used + 1L) * 2 <= capacity)
+                return true;
+        }
+        // The table cannot grow, keep filling it with longer probe sequences until it is nearly full
+        return (used + 1L) * 8 <= capacity * 7L;
+    }
+
+    /**
+     * Rehash the live keys into a table of the given capacity, in a mapping of the same file
+     * @param newCapacity The new capacity, at least the current capacity
+     */
+    private void rebuild(int newCapacity) {
+        try (var timer = TodoMetrics.time("reviewed.rebuild")) {
+            timer.items(live);
+            final var keys = new long[live];
+            var count = 0;
+            for (var slot = 0; slot < capacity; slot++) {
+                final var value = table.get(slot);
+                if (value != EMPTY && value != DELETED)
+                    keys[count++] = value;
+            }
+            // The file beyond the old mapping was never written, growing the mapping fills it with zeros
+            final var written = HEADER_SIZE + 8L * (bloom.capacity() + table.capacity());
+            if (newCapacity != capacity)
+                map(newCapacity);
+            // A store that is interrupted while the table is rebuilt is discarded when it is opened again
+            buffer.putInt(0, 0);
+            zero(written);
+            live = 0;
+            used = 0;
+            for (var i = 0; i < count; i++) {
+                insert(keys[i]);
+            }
+            writeHeader();
+        } catch (IOException e) {
+            // The old mapping is only replaced when the new one could be created, so the table is still valid
+            Logging.warn("Could not grow the todo list review store " + file + ", it fills up without growing");
+            Logging.warn(e);
+            rebuildFailed = true;
+        }
+    }
+
+    /**
+     * Remove all keys from the table and the bloom filter
+     */
+    private void reset() {
+        zero(buffer.capacity());
+        live = 0;
+        used = 0;
+    }
+
+    /**
+     * Clear the mapping after the header with bulk writes
+     * @param end The end of the bytes to clear
+     */
+    private void zero(long end) {
+        for (var position = HEADER_SIZE; position < end; position += ZEROS.length) {
+            buffer.put(position, ZEROS, 0, (int) Math.min(ZEROS.length, end - position));
+        }
+    }
+
+    private void insert(long key) {
+        final var hash = hash(key);
+        var slot = (int) hash & (capacity - 1);
+        while (table.get(slot) != EMPTY) {
+            slot = (slot + 1) & (capacity - 1);
+        }
+        table.put(slot, key);
+        live++;
+        used++;
+        addToBloom(hash);
+    }
+
+    private void writeHeader() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT);
+        buffer.putInt(8, capacity);
+        buffer.putInt(12, live);
+        buffer.putInt(16, used);
+    }
+
+    private boolean inBloom(long hash) {
+        final var bits = (long) bloom.capacity() * 64;
+        final var step = (hash >>> 32) | 1;
+        for (var i = 0; i < BLOOM_HASHES; i++) {
+            final var bit = (hash + i * step) & (bits - 1);
+            if ((bloom.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    private void addToBloom(long hash) {
+        final var bits = (long) bloom.capacity() * 64;
+        final var step = (hash >>> 32) | 1;
+        for (var i = 0; i < BLOOM_HASHES; i++) {
+            final var bit = (hash + i * step) & (bits - 1);
+            final var word = (int) (bit >>> 6);
+            bloom.put(word, bloom.get(word) | (1L << bit));
+        }
+    }
+
+    /**
+     * Pack the type, id and version of an object into a key
+     * @param primitive The object
+     * @return The key, or {@link #EMPTY} if the object cannot be stored
+     */
+    private static long key(IPrimitive primitive) {
+        final var id = primitive.getUniqueId();
+        final var version = primitive.getVersion();
+        if (id <= 0 || id >= 1L << 40 || version <= 0 || version >= 1 << 20)
+            return EMPTY;
+        return ((long) (primitive.getType().ordinal() + 1) << 60) | ((long) version << 40) | id;
+    }
+
+    /**
+     * The finalizer of MurmurHash3, to spread the bits of the ids over the table
+     */
+    private static long hash(long key) {
+        var h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
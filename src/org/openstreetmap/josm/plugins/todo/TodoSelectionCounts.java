@@ -0,0 +1,154 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import org.openstreetmap.josm.data.osm.DataSelectionListener;
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.OsmData;
+
+/**
+ * Counts how many of the objects selected on the map are in the todo list, in the done list or in neither.
+ * <p>
+ * Selection changes only classify the added and removed objects, and the model reports the objects of items that
+ * were added, removed, marked or unmarked, so the cost is proportional to the change and not to the selection size.
+ */
+final class TodoSelectionCounts implements DataSelectionListener {
+    /**
+     * Where a selected object is in the model
+     */
+    enum Membership {
+        /** The object has an item in the todo list */
+        TODO,
+        /** The object only has items in the done list */
+        DONE,
+        /** The object is not in the model */
+        NEW
+    }
+
+    private final Function<IPrimitive, Membership> classifier;
+    /** The selected objects of the data set, with their last known membership */
+    private final Map<IPrimitive, Membership> selected = new HashMap<>();
+    private final int[] counts = new int[Membership.values().length];
+    private final CopyOnWriteArrayList<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private OsmData<?, ?, ?, ?> dataSet;
+
+    /**
+     * Create new counts
+     * @param classifier Get the membership of an object from the model
+     */
+    TodoSelectionCounts(Function<IPrimitive, Membership> classifier) {
+        this.classifier = classifier;
+    }
+
+    /**
+     * Add a listener that is notified when the selection changed
+     * @param listener The listener
+     */
+    void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Get the number of selected objects with a membership
+     * @param membership The membership
+     * @return The number of selected objects
+     */
+    int getCount(Membership membership) {
+        return counts[membership.ordinal()];
+    }
+
+    /**
+     * Get the number of selected objects
+     * @return The selection size
+     */
+    int getSelectedCount() {
+        return selected.size();
+    }
+
+    /**
+     * Get a summary of the counts
+     * @return The summary, or an empty string if nothing is selected
+     */
+    String getSummary() {
+        if (selected.isEmpty())
+            return "";
+        return tr("selected: {0} todo, {1} done, {2} new", getCount(Membership.TODO), getCount(Membership.DONE),
+                getCount(Membership.NEW));
+    }
+
+    /**
+     * Start counting the selection of a data set
+     * @param dataSet The data set, or {@code null} to stop counting
+     */
+    void setDataSet(OsmData<?, ?, ?, ?> dataSet) {
+        this.dataSet = dataSet;
+        selected.clear();
+        Arrays.fill(counts, 0);
+        if (dataSet != null)
+            add(dataSet.getAllSelected());
+        listeners.forEach(Runnable::run);
+    }
+
+    @Override
+    public void selectionChanged(SelectionChangeEvent event) {
+        try (var timer = TodoMetrics.time("selection.changed")) {
+            if (event.getSource() != dataSet) {
+                // The active data set changed
+                timer.items(event.getSelection().size());
+                setDataSet(event.getSource());
+                return;
+            }
+            for (var primitive : event.getRemoved()) {
+                final var membership = selected.remove(primitive);
+                if (membership != null)
+                    counts[membership.ordinal()]--;
+            }
+            add(event.getAdded());
+            timer.items(event.getAdded().size() + event.getRemoved().size());
+        }
+        listeners.forEach(Runnable::run);
+    }
+
+    /**
+     * Update the membership of an object after its items changed
+     * @param primitive The object
+     */
+    void changed(IPrimitive primitive) {
+        final var previous = selected.get(primitive);
+        if (previous != null) {
+            final var membership = classifier.apply(primitive);
+            if (membership != previous) {
+                counts[previous.ordinal()]--;
+                counts[membership.ordinal()]++;
+                selected.put(primitive, membership);
+            }
+        }
+    }
+
+    /**
+     * Classify all selected objects again, after the whole model was replaced
+     */
+    void reset() {
+        selected.replaceAll((primitive, membership) -> classifier.apply(primitive));
+        Arrays.fill(counts, 0);
+        selected.values().forEach(membership -> counts[membership.ordinal()]++);
+    }
+
+    private void add(Collection<? extends IPrimitive> primitives) {
+        for (var primitive : primitives) {
+            if (!selected.containsKey(primitive)) {
+                final var membership = classifier.apply(primitive);
+                selected.put(primitive, membership);
+                counts[membership.ordinal()]++;
+            }
+        }
+    }
+}
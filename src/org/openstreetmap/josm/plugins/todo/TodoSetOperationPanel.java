@@ -0,0 +1,108 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.openstreetmap.josm.tools.I18n.marktr;
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.awt.GridBagLayout;
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+
+import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.tools.GBC;
+
+/**
+ * A panel to combine the todo list with the map selection, the done items, another list or a list of ids.
+ * <p>
+ * Both sides are converted to {@link TodoIdSet}s, so the operations do not depend on hashing every item.
+ */
+class TodoSetOperationPanel extends JPanel {
+    @Serial
+    private static final long serialVersionUID = -6407093164938839315L;
+
+    private enum Operation {
+        INTERSECT(marktr("Keep only the items in")),
+        UNION(marktr("Add the objects of")),
+        SUBTRACT(marktr("Remove the items in")),
+        SYMMETRIC_DIFFERENCE(marktr("Toggle the objects of"));
+
+        private final String name;
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return tr(name);
+        }
+    }
+
+    private final transient TodoListModel model;
+    private final JComboBox<Operation> operation = new JComboBox<>(Operation.values());
+    private final JComboBox<String> operand = new JComboBox<>();
+    private final JTextArea ids = new JTextArea(5, 40);
+    private final List<String> otherLists = new ArrayList<>();
+
+    /**
+     * Create a new panel
+     * @param model The model to change
+     */
+    TodoSetOperationPanel(TodoListModel model) {
+        super(new GridBagLayout());
+        this.model = model;
+        operand.addItem(tr("the map selection"));
+        operand.addItem(tr("the done items"));
+        operand.addItem(tr("the ids below"));
+        for (var name : model.getListNames()) {
+            if (!name.equals(model.getCurrentList())) {
+                otherLists.add(name);
+                operand.addItem(tr("the list \"{0}\"", name));
+            }
+        }
+        ids.setLineWrap(true);
+        ids.setToolTipText(tr("Object ids of the active layer, e.g. n123, w456, r789"));
+        add(operation, GBC.std().insets(0, 0, 5, 5));
+        add(operand, GBC.eol().fill(GBC.HORIZONTAL).insets(0, 0, 0, 5));
+        add(new JLabel(tr("Ids:")), GBC.eol());
+        add(new JScrollPane(ids), GBC.eol().fill());
+    }
+
+    /**
+     * Apply the chosen operation to the todo list
+     */
+    void apply() {
+        final var other = getOperand();
+        if (other == null)
+            return;
+        switch ((Operation) operation.getSelectedItem()) {
+            case INTERSECT -> model.intersect(other);
+            case UNION -> model.union(other);
+            case SUBTRACT -> model.subtract(other);
+            case SYMMETRIC_DIFFERENCE -> model.symmetricDifference(other);
+            default -> throw new IllegalStateException();
+        }
+    }
+
+    private TodoIdSet getOperand() {
+        final var index = operand.getSelectedIndex();
+        if (index == 1)
+            return TodoIdSet.of(model.getDoneList());
+        if (index > 2)
+            return TodoIdSet.of(model.getTodoList(otherLists.get(index - 3)));
+        final var layer = MainApplication.getLayerManager().getActiveDataLayer();
+        if (layer == null)
+            return null;
+        if (index == 0)
+            return TodoIdSet.of(layer, layer.getDataSet().getAllSelected());
+        return TodoIdSet.of(layer, SimplePrimitiveId.fuzzyParse(ids.getText()));
+    }
+}
@@ -0,0 +1,91 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.swing.JOptionPane;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.PleaseWaitRunnable;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * Splits the todo items into spatial shards and writes every shard to an id file, so several mappers can work on
+ * one large list in parallel. The done state of a shard file can be merged back into the list afterwards.
+ */
+class TodoShardTask extends PleaseWaitRunnable {
+    private final List<TodoListItem> items;
+    private final List<EastNorth> positions;
+    private final int count;
+    private final Path directory;
+    private final String baseName;
+    private volatile boolean canceled;
+
+    /**
+     * Create a new task
+     * @param items The todo items, a copy that is not changed anymore
+     * @param positions The positions of the items, see {@link TodoShards#split}
+     * @param count The number of shards
+     * @param directory The directory of the shard files
+     * @param baseName The start of the shard file names, they are numbered from 1
+     */
+    TodoShardTask(List<TodoListItem> items, List<EastNorth> positions, int count, Path directory, String baseName) {
+        super(tr("Splitting the todo list into shards"), false);
+        this.items = items;
+        this.positions = positions;
+        this.count = count;
+        this.directory = directory;
+        this.baseName = baseName;
+    }
+
+    /**
+     * Get the file of a shard
+     * @param directory The directory of the shard files
+     * @param baseName The start of the shard file names
+     * @param shard The shard number, starting at 1
+     * @return The file
+     */
+    static Path shardFile(Path directory, String baseName, int shard) {
+        return directory.resolve(baseName + "-" + shard + ".txt");
+    }
+
+    @Override
+    protected void cancel() {
+        canceled = true;
+    }
+
+    @Override
+    protected void realRun() {
+        final var monitor = getProgressMonitor();
+        monitor.setTicksCount(count + 1);
+        final List<List<TodoListItem>> shards;
+        try (var timer = TodoMetrics.time("shard")) {
+            timer.items(items.size());
+            shards = TodoShards.split(items, positions, count);
+        }
+        monitor.worked(1);
+        for (var i = 0; i < shards.size() && !canceled; i++) {
+            final var file = shardFile(directory, baseName, i + 1);
+            try {
+                TodoIdFile.write(file, shards.get(i), List.of());
+            } catch (IOException e) {
+                Logging.error(e);
+                GuiHelper.runInEDT(() -> JOptionPane.showMessageDialog(MainApplication.getMainFrame(),
+                        tr("Could not write the shard {0}: {1}", file, e.getMessage()), tr("Error"), JOptionPane.ERROR_MESSAGE));
+                return;
+            }
+            monitor.worked(1);
+        }
+    }
+
+    @Override
+    protected void finish() {
+        // Nothing to do, the files are written in realRun
+    }
+}
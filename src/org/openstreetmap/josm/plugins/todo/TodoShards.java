@@ -0,0 +1,167 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+
+/**
+ * Splits todo items into balanced, spatially compact shards.
+ * <p>
+ * The items are split recursively at the median of the longer side of their bounding box (a k-d split), with the
+ * median found by selection instead of sorting. The two halves of every split are split in parallel. Items without a
+ * position are spread over the shards afterwards.
+ */
+final class TodoShards {
+    /** Ranges smaller than this are split in the calling thread */
+    private static final int PARALLEL_THRESHOLD = 10_000;
+
+    private TodoShards() {
+        // Hide the default constructor
+    }
+
+    /**
+     * Split items into shards
+     * @param items The items
+     * @param positions The positions of the items, {@code null} entries for items without a position
+     * @param count The number of shards
+     * @return The shards, their sizes differ by at most one
+     */
+    static List<List<TodoListItem>> split(List<TodoListItem> items, List<EastNorth> positions, int count) {
+        final var shards = new ArrayList<List<TodoListItem>>(count);
+        for (var i = 0; i < count; i++) {
+            shards.add(new ArrayList<>());
+        }
+        final var located = new ArrayList<Integer>();
+        final var unlocated = new ArrayList<TodoListItem>();
+        for (var i = 0; i < items.size(); i++) {
+            if (positions.get(i) != null && positions.get(i).isValid())
+                located.add(i);
+            else
+                unlocated.add(items.get(i));
+        }
+        final var order = new int[located.size()];
+        final var x = new double[located.size()];
+        final var y = new double[located.size()];
+        for (var i = 0; i < order.length; i++) {
+            order[i] = i;
+            x[i] = positions.get(located.get(i)).east();
+            y[i] = positions.get(located.get(i)).north();
+        }
+        final var ends = new int[count];
+        ForkJoinPool.commonPool().invoke(new Split(order, x, y, 0, order.length, 0, count, ends));
+        var start = 0;
+        for (var shard = 0; shard < count; shard++) {
+            for (var i = start; i < ends[shard]; i++) {
+                shards.get(shard).add(items.get(located.get(order[i])));
+            }
+            start = ends[shard];
+        }
+        // Fill up the smallest shards, so the sizes stay balanced
+        for (var item : unlocated) {
+            var smallest = shards.get(0);
+            for (var shard : shards) {
+                if (shard.size() < smallest.size())
+                    smallest = shard;
+            }
+            smallest.add(item);
+        }
+        return shards;
+    }
+
+    /**
+     * Split the range {@code [from, to)} of {@code order} into the shards {@code [firstShard, firstShard + shards)}
+     */
+    private static final class Split extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private final int[] order;
+        private final double[] x;
+        private final double[] y;
+        private final int from;
+        private final int to;
+        private final int firstShard;
+        private final int shards;
+        private final int[] ends;
+
+        Split(int[] order, double[] x, double[] y, int from, int to, int firstShard, int shards, int[] ends) {
+            this.order = order;
+            this.x = x;
+            this.y = y;
+            this.from = from;
+            this.to = to;
+            this.firstShard = firstShard;
+            this.shards = shards;
+            this.ends = ends;
+        }
+
+        @Override
+        protected void compute() {
+            if (shards == 1) {
+                ends[firstShard] = to;
+                return;
+            }
+            final var leftShards = shards / 2;
+            final var middle = from + (int) ((long) (to - from) * leftShards / shards);
+            if (middle > from && middle < to)
+                select(longerAxis(), middle);
+            final var left = new Split(order, x, y, from, middle, firstShard, leftShards, ends);
+            final var right = new Split(order, x, y, middle, to, firstShard + leftShards, shards - leftShards, ends);
+            if (to - from < PARALLEL_THRESHOLD) {
+                left.compute();
+                right.compute();
+            } else {
+                invokeAll(left, right);
+            }
+        }
+
+        private double[] longerAxis() {
+            var minX = Double.POSITIVE_INFINITY;
+            var maxX = Double.NEGATIVE_INFINITY;
+            var minY = Double.POSITIVE_INFINITY;
+            var maxY = Double.NEGATIVE_INFINITY;
+            for (var i = from; i < to; i++) {
+                minX = Math.min(minX, x[order[i]]);
+                maxX = Math.max(maxX, x[order[i]]);
+                minY = Math.min(minY, y[order[i]]);
+                maxY = Math.max(maxY, y[order[i]]);
+            }
+            return maxX - minX >= maxY - minY ? x : y;
+        }
+
+        /**
+         * Reorder the range so the element at {@code k} is in its sorted position, with smaller keys before it and
+         * larger keys after it (quickselect)
+         */
+        private void select(double[] keys, int k) {
+            var low = from;
+            var high = to - 1;
+            while (low < high) {
+                final var pivot = keys[order[(low + high) >>> 1]];
+                var i = low;
+                var j = high;
+                while (i <= j) {
+                    while (keys[order[i]] < pivot)
+                        i++;
+                    while (keys[order[j]] > pivot)
+                        j--;
+                    if (i <= j) {
+                        final var swap = order[i];
+                        order[i++] = order[j];
+                        order[j--] = swap;
+                    }
+                }
+                if (k <= j)
+                    high = j;
+                else if (k >= i)
+                    low = i;
+                else
+                    return;
+            }
+        }
+    }
+}
@@ -0,0 +1,301 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+
+/**
+ * A point quadtree over the projected positions of todo list items.
+ * <p>
+ * Every node keeps the number of items below it and the sum of their coordinates, so areas that are too small to be
+ * told apart on screen can be reported as a single cluster without visiting the items.
+ */
+final class TodoSpatialIndex {
+    /** The number of items in a leaf before it is split */
+    private static final int NODE_CAPACITY = 64;
+    /** The size of the smallest node, in east/north units. Leafs of this size are not split anymore. */
+    private static final double MIN_NODE_SIZE = 1e-3;
+    /** The size of a new root node, in east/north units */
+    private static final double INITIAL_SIZE = 1024;
+
+    /**
+     * Receives the items and clusters found by {@link #visit}
+     */
+    interface Visitor {
+        /**
+         * Called for every item in the visited area that is not part of a cluster
+         * @param item The item
+         * @param east The east coordinate of the item
+         * @param north The north coordinate of the item
+         */
+        void item(TodoListItem item, double east, double north);
+
+        /**
+         * Called for a group of items that are closer together than the cluster size
+         * @param count The number of items in the cluster
+         * @param east The mean east coordinate of the items
+         * @param north The mean north coordinate of the items
+         */
+        void cluster(int count, double east, double north);
+    }
+
+    private static final class Node {
+        private final double minX;
+        private final double minY;
+        private final double maxX;
+        private final double maxY;
+        private Node[] children;
+        private TodoListItem[] items = new TodoListItem[4];
+        private double[] xs = new double[4];
+        private double[] ys = new double[4];
+        /** The number of entries in this leaf */
+        private int entries;
+        /** The number of items in this node and all its children */
+        private int count;
+        private double sumX;
+        private double sumY;
+
+        Node(double minX, double minY, double maxX, double maxY) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        boolean contains(double x, double y) {
+            return x >= minX && x < maxX && y >= minY && y < maxY;
+        }
+
+        boolean intersects(double qMinX, double qMinY, double qMaxX, double qMaxY) {
+            return qMinX < maxX && qMaxX >= minX && qMinY < maxY && qMaxY >= minY;
+        }
+
+        double distance(double x, double y) {
+            final var dx = Math.max(0, Math.max(minX - x, x - maxX));
+            final var dy = Math.max(0, Math.max(minY - y, y - maxY));
+            return dx * dx + dy * dy;
+        }
+
+        Node child(double x, double y) {
+            final var midX = (minX + maxX) / 2;
+            final var midY = (minY + maxY) / 2;
+            return children[(x >= midX ? 1 : 0) + (y >= midY ? 2 : 0)];
+        }
+
+        void split() {
+            final var midX = (minX + maxX) / 2;
+            final var midY = (minY + maxY) / 2;
+            children = new Node[] {
+                    new Node(minX, minY, midX, midY),
+                    new Node(midX, minY, maxX, midY),
+                    new Node(minX, midY, midX, maxY),
+                    new Node(midX, midY, maxX, maxY)
+            };
+            for (var i = 0; i < entries; i++) {
+                child(xs[i], ys[i]).add(items[i], xs[i], ys[i]);
+            }
+            items = null;
+            xs = null;
+            ys = null;
+            entries = 0;
+        }
+
+        void add(TodoListItem item, double x, double y) {
+            count++;
+            sumX += x;
+            sumY += y;
+            if (children == null && entries == NODE_CAPACITY && maxX - minX > MIN_NODE_SIZE) {
+                split();
+            }
+            if (children != null) {
+                child(x, y).add(item, x, y);
+                return;
+            }
+            if (entries == items.length) {
+                final var length = entries * 2;
+                items = Arrays.copyOf(items, length);
+                xs = Arrays.copyOf(xs, length);
+                ys = Arrays.copyOf(ys, length);
+            }
+            items[entries] = item;
+            xs[entries] = x;
+            ys[entries] = y;
+            entries++;
+        }
+
+        boolean remove(TodoListItem item, double x, double y) {
+            final boolean removed;
+            if (children != null) {
+                removed = child(x, y).remove(item, x, y);
+            } else {
+                var index = -1;
+                for (var i = 0; i < entries && index < 0; i++) {
+                    if (items[i].equals(item)) {
+                        index = i;
+                    }
+                }
+                removed = index >= 0;
+                if (removed) {
+                    entries--;
+                    items[index] = items[entries];
+                    xs[index] = xs[entries];
+                    ys[index] = ys[entries];
+                    items[entries] = null;
+                }
+            }
+            if (removed) {
+                count--;
+                sumX -= x;
+                sumY -= y;
+            }
+            return removed;
+        }
+    }
+
+    private Node root;
+
+    /**
+     * Add an item to the index
+     * @param item The item to add
+     * @param position The projected position of the item
+     */
+    void add(TodoListItem item, EastNorth position) {
+        if (position == null || !position.isValid()) {
+            return;
+        }
+        final var x = position.east();
+        final var y = position.north();
+        if (root == null) {
+            root = new Node(x - INITIAL_SIZE / 2, y - INITIAL_SIZE / 2, x + INITIAL_SIZE / 2, y + INITIAL_SIZE / 2);
+        }
+        while (!root.contains(x, y)) {
+            grow(x, y);
+        }
+        root.add(item, x, y);
+    }
+
+    /**
+     * Remove an item from the index
+     * @param item The item to remove
+     * @param position The position the item was added with
+     * @return {@code true} if the item was found
+     */
+    boolean remove(TodoListItem item, EastNorth position) {
+        if (root == null || position == null || !position.isValid() || !root.contains(position.east(), position.north())) {
+            return false;
+        }
+        return root.remove(item, position.east(), position.north());
+    }
+
+    /**
+     * Remove all items
+     */
+    void clear() {
+        root = null;
+    }
+
+    /**
+     * Get the number of items in the index
+     * @return The number of items
+     */
+    int size() {
+        return root == null ? 0 : root.count;
+    }
+
+    /**
+     * Visit all items in an area
+     * @param minEast The minimum east coordinate of the area
+     * @param minNorth The minimum north coordinate of the area
+     * @param maxEast The maximum east coordinate of the area
+     * @param maxNorth The maximum north coordinate of the area
+     * @param clusterSize Nodes smaller than this are reported as a single cluster, use 0 to get all items
+     * @param visitor The visitor to call
+     */
+    void visit(double minEast, double minNorth, double maxEast, double maxNorth, double clusterSize, Visitor visitor) {
+        if (root != null) {
+            visit(root, minEast, minNorth, maxEast, maxNorth, clusterSize, visitor);
+        }
+    }
+
+    private static void visit(Node node, double minX, double minY, double maxX, double maxY, double clusterSize, Visitor visitor) {
+        if (node.count == 0 || !node.intersects(minX, minY, maxX, maxY)) {
+            return;
+        }
+        if (node.count > 1 && node.maxX - node.minX <= clusterSize) {
+            visitor.cluster(node.count, node.sumX / node.count, node.sumY / node.count);
+        } else if (node.children != null) {
+            for (var child : node.children) {
+                visit(child, minX, minY, maxX, maxY, clusterSize, visitor);
+            }
+        } else {
+            for (var i = 0; i < node.entries; i++) {
+                final var x = node.xs[i];
+                final var y = node.ys[i];
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                    visitor.item(node.items[i], x, y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the item closest to a point, by searching the nodes in order of their distance to the point
+     * @param east The east coordinate of the point
+     * @param north The north coordinate of the point
+     * @return The closest item, or {@code null} if the index is empty
+     */
+    TodoListItem nearest(double east, double north) {
+        if (root == null || root.count == 0) {
+            return null;
+        }
+        // Entries are either nodes or items, ordered by their (minimal) squared distance to the point
+        final var queue = new PriorityQueue<Candidate>(Comparator.comparingDouble(Candidate::distance));
+        queue.add(new Candidate(0, root, null));
+        while (!queue.isEmpty()) {
+            final var candidate = queue.poll();
+            if (candidate.item() != null) {
+                return candidate.item();
+            }
+            final var node = candidate.node();
+            if (node.children != null) {
+                for (var child : node.children) {
+                    if (child.count > 0) {
+                        queue.add(new Candidate(child.distance(east, north), child, null));
+                    }
+                }
+            } else {
+                for (var i = 0; i < node.entries; i++) {
+                    final var dx = node.xs[i] - east;
+                    final var dy = node.ys[i] - north;
+                    queue.add(new Candidate(dx * dx + dy * dy, null, node.items[i]));
+                }
+            }
+        }
+        return null;
+    }
+
+    private record Candidate(double distance, Node node, TodoListItem item) {
+    }
+
+    /**
+     * Double the size of the root node towards a point outside of it
+     */
+    private void grow(double x, double y) {
+        final var old = root;
+        final var width = old.maxX - old.minX;
+        final var height = old.maxY - old.minY;
+        final var west = x < old.minX;
+        final var south = y < old.minY;
+        final var grown = new Node(west ? old.minX - width : old.minX, south ? old.minY - height : old.minY,
+                west ? old.maxX : old.maxX + width, south ? old.maxY : old.maxY + height);
+        grown.split();
+        grown.children[(west ? 1 : 0) + (south ? 2 : 0)] = old;
+        grown.count = old.count;
+        grown.sumX = old.sumX;
+        grown.sumY = old.sumY;
+        root = grown;
+    }
+}
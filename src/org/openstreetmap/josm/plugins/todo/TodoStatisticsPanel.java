@@ -0,0 +1,110 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.awt.BorderLayout;
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * A panel showing the progress of a todo list per layer and per primitive type.
+ * <p>
+ * The values are read from the {@link TodoListStatistics} of the current list, so refreshing the panel does not scan
+ * the lists.
+ */
+class TodoStatisticsPanel extends JPanel {
+    @Serial
+    private static final long serialVersionUID = -3164409412658290364L;
+
+    private final transient TodoListModel model;
+    private final StatisticsTableModel tableModel = new StatisticsTableModel();
+    private final JLabel rate = new JLabel();
+
+    /**
+     * Create a new statistics panel
+     * @param model The model to show the statistics of
+     */
+    TodoStatisticsPanel(TodoListModel model) {
+        super(new BorderLayout());
+        this.model = model;
+        final var table = new JTable(tableModel);
+        table.setFillsViewportHeight(true);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(rate, BorderLayout.SOUTH);
+        refresh();
+    }
+
+    /**
+     * Refresh the panel from the current statistics
+     */
+    void refresh() {
+        final var statistics = model.getStatistics();
+        final var rows = new ArrayList<Row>();
+        rows.add(new Row(tr("All"), statistics.getAll()));
+        statistics.getPerType().forEach((type, counter) -> {
+            if (counter.getTotal() > 0) {
+                rows.add(new Row(type.getAPIName(), counter));
+            }
+        });
+        statistics.getPerLayer().forEach((layer, counter) -> rows.add(new Row(layer.getName(), counter)));
+        tableModel.setRows(rows);
+        rate.setText(tr("{0} items per minute", Math.round(statistics.getItemsPerMinute() * 10) / 10.0));
+    }
+
+    private record Row(String group, int done, int total) {
+        Row(String group, TodoListStatistics.Counter counter) {
+            this(group, counter.getDone(), counter.getTotal());
+        }
+    }
+
+    private static class StatisticsTableModel extends AbstractTableModel {
+        @Serial
+        private static final long serialVersionUID = 2474930318567624120L;
+        private transient List<Row> rows = List.of();
+
+        void setRows(List<Row> rows) {
+            this.rows = rows;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return 4;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return switch (column) {
+                case 0 -> tr("Group");
+                case 1 -> tr("Done");
+                case 2 -> tr("Total");
+                default -> tr("Progress");
+            };
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            final var row = rows.get(rowIndex);
+            return switch (columnIndex) {
+                case 0 -> row.group();
+                case 1 -> row.done();
+                case 2 -> row.total();
+                default -> row.total() == 0 ? "" : String.format(Locale.ROOT, "%.1f%%", 100.0 * row.done() / row.total());
+            };
+        }
+    }
+}
@@ -0,0 +1,117 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.validation.OsmValidator;
+import org.openstreetmap.josm.data.validation.Severity;
+import org.openstreetmap.josm.data.validation.Test;
+import org.openstreetmap.josm.data.validation.TestError;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.PleaseWaitRunnable;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+
+/**
+ * Runs the enabled validator tests and adds the primitives with errors to the todo list.
+ * <p>
+ * The primitives are added after each test, ordered by severity, so the list starts filling while the validation
+ * is still running and the items are grouped by test and severity.
+ */
+class TodoValidatorTask extends PleaseWaitRunnable {
+    private final TodoListModel model;
+    private final OsmDataLayer layer;
+    private final Collection<OsmPrimitive> primitives;
+    private final Collection<Test> tests;
+    private final boolean partialSelection;
+    private volatile boolean canceled;
+
+    /**
+     * Create a new task
+     * @param model The model to add the items to
+     * @param layer The layer to validate
+     * @param primitives The primitives to validate
+     * @param partialSelection {@code true} if the primitives are the selection, {@code false} if they are the whole layer
+     */
+    TodoValidatorTask(TodoListModel model, OsmDataLayer layer, Collection<OsmPrimitive> primitives, boolean partialSelection) {
+        super(tr("Adding validator errors to the todo list"), false);
+        this.model = model;
+        this.layer = layer;
+        this.primitives = primitives;
+        this.tests = OsmValidator.getEnabledTests(false);
+        this.partialSelection = partialSelection;
+    }
+
+    @Override
+    protected void cancel() {
+        canceled = true;
+    }
+
+    @Override
+    protected void realRun() {
+        final var monitor = getProgressMonitor();
+        monitor.setTicksCount(tests.size());
+        for (var test : tests) {
+            if (canceled) {
+                return;
+            }
+            monitor.setCustomText(test.getName());
+            final List<TestError> errors;
+            try (var timer = TodoMetrics.time("validator.test")) {
+                timer.items(primitives.size());
+                test.setBeforeUpload(false);
+                test.setPartialSelection(partialSelection);
+                test.startTest(monitor.createSubTaskMonitor(1, false));
+                test.visit(primitives);
+                test.endTest();
+                errors = new ArrayList<>(test.getErrors());
+                test.clear();
+            }
+            errors.removeIf(TestError::isIgnored);
+            if (!errors.isEmpty()) {
+                addErrors(errors);
+            }
+        }
+    }
+
+    /**
+     * Add the primitives of the errors of a test, most severe first, in a single change of the model
+     * @param errors The errors of one test
+     */
+    private void addErrors(List<TestError> errors) {
+        errors.sort(Comparator.comparing(TestError::getSeverity));
+        // The errors are sorted, so the first severity of an item is its most severe one
+        final var items = new LinkedHashMap<TodoListItem, Severity>();
+        for (var error : errors) {
+            for (var primitive : error.getPrimitives()) {
+                if (primitive.getDataSet() == layer.getDataSet()) {
+                    items.putIfAbsent(new TodoListItem(layer, primitive), error.getSeverity());
+                }
+            }
+        }
+        GuiHelper.runInEDT(() -> {
+            // The layer may have been removed while the validation was running
+            if (!canceled && MainApplication.getLayerManager().containsLayer(layer)) {
+                final var added = model.withoutReviewed(items.keySet());
+                model.batch(() -> model.addItems(added));
+                // Only the severities of items in the model are kept, they are forgotten when the items are removed
+                for (var item : added) {
+                    if (model.getGeometry().contains(item))
+                        model.setSeverity(item, items.get(item));
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void finish() {
+        // Nothing to do, the items are added after every test
+    }
+}
@@ -0,0 +1,145 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.DefaultListSelectionModel;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.TagsChangedEvent;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * Test class for {@link TodoAutoRules} and how {@link TodoListCore} applies them
+ */
+@BasicPreferences
+@Projection
+class TodoAutoRulesTest {
+    private DataSet ds;
+    private TodoListModel model;
+    private Node todo;
+    private Node done;
+    private TodoListItem todoItem;
+    private TodoListItem doneItem;
+
+    @BeforeEach
+    void setup() {
+        this.ds = new DataSet();
+        final var layer = new OsmDataLayer(this.ds, "TodoAutoRulesTest", null);
+        this.todo = new Node(new LatLon(50, 8));
+        this.done = new Node(new LatLon(50.001, 8));
+        this.ds.addPrimitive(this.todo);
+        this.ds.addPrimitive(this.done);
+        this.todoItem = new TodoListItem(layer, this.todo);
+        this.doneItem = new TodoListItem(layer, this.done);
+        this.model = new TodoListModel(new DefaultListSelectionModel());
+        this.model.addItems(List.of(this.todoItem, this.doneItem));
+        this.model.markItems(List.of(this.doneItem));
+    }
+
+    @AfterEach
+    void tearDown() {
+        TodoAutoRules.MARK_MODIFIED.remove();
+        TodoAutoRules.MARK_TAGS.remove();
+        TodoAutoRules.REOPEN_EDITED.remove();
+    }
+
+    private void tagsChanged(Node node, Map<String, String> originalKeys) {
+        this.model.tagsChanged(new TagsChangedEvent(this.ds, node, originalKeys));
+    }
+
+    @Test
+    void testDisabled() {
+        assertFalse(TodoAutoRules.isEnabled());
+        this.todo.setModified(true);
+        tagsChanged(this.todo, Map.of());
+        tagsChanged(this.done, Map.of());
+        assertEquals(List.of(this.todoItem), this.model.getTodoList());
+        assertEquals(Set.of(this.doneItem), Set.copyOf(this.model.getDoneList()));
+    }
+
+    @Test
+    void testMarkModified() {
+        TodoAutoRules.MARK_MODIFIED.put(true);
+        tagsChanged(this.todo, Map.of());
+        assertEquals(1, this.model.getSize(), "Unmodified objects are not marked");
+
+        this.todo.setModified(true);
+        tagsChanged(this.todo, Map.of());
+        assertEquals(0, this.model.getSize());
+        assertEquals(2, this.model.getDoneSize());
+    }
+
+    @Test
+    void testMarkTags() {
+        TodoAutoRules.MARK_TAGS.put(List.of("check_date"));
+        this.todo.put("check_date", "2024-01-01");
+        tagsChanged(this.todo, Map.of("check_date", "2023-01-01"));
+        assertEquals(1, this.model.getSize(), "Changing a key that was already there does not mark");
+
+        tagsChanged(this.todo, Map.of());
+        assertEquals(0, this.model.getSize(), "Adding the key marks");
+    }
+
+    @Test
+    void testReopenEdited() {
+        TodoAutoRules.REOPEN_EDITED.put(true);
+        tagsChanged(this.done, Map.of());
+        assertEquals(List.of(this.todoItem, this.doneItem), this.model.getTodoList());
+        assertEquals(0, this.model.getDoneSize());
+    }
+
+    @Test
+    void testPrecedence() {
+        TodoAutoRules.MARK_MODIFIED.put(true);
+        TodoAutoRules.REOPEN_EDITED.put(true);
+        this.todo.setModified(true);
+        this.done.setModified(true);
+
+        // A change that marks the items of an object does not reopen them, so they do not flip on every edit
+        tagsChanged(this.todo, Map.of());
+        tagsChanged(this.todo, Map.of());
+        tagsChanged(this.done, Map.of());
+        assertEquals(0, this.model.getSize());
+        assertEquals(Set.of(this.todoItem, this.doneItem), Set.copyOf(this.model.getDoneList()));
+
+        // Changes that do not mark still reopen
+        this.done.setModified(false);
+        tagsChanged(this.done, Map.of());
+        assertEquals(List.of(this.doneItem), this.model.getTodoList());
+    }
+
+    @Test
+    void testSingleUndoStep() {
+        TodoAutoRules.MARK_MODIFIED.put(true);
+        TodoAutoRules.REOPEN_EDITED.put(true);
+        this.todo.setModified(true);
+        this.model.getHistory().clear();
+
+        // The consolidated events of one command
+        this.model.dataChanged(new DataChangedEvent(this.ds, List.of(
+                new TagsChangedEvent(this.ds, this.todo, Map.of()),
+                new TagsChangedEvent(this.ds, this.done, Map.of()))));
+        assertEquals(List.of(this.doneItem), this.model.getTodoList());
+        assertTrue(this.model.getHistory().canUndo());
+
+        this.model.undo();
+        assertEquals(List.of(this.todoItem), this.model.getTodoList(), "Marking and reopening are undone together");
+        assertEquals(Set.of(this.doneItem), Set.copyOf(this.model.getDoneList()));
+        assertFalse(this.model.getHistory().canUndo());
+    }
+}
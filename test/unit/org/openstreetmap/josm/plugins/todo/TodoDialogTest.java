@@ -3,33 +3,32 @@ package org.openstreetmap.josm.plugins.todo;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
-import java.io.File;
-import java.net.URL;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 
 import javax.swing.AbstractButton;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
-import org.junit.platform.commons.support.ReflectionSupport;
 import org.openstreetmap.josm.TestUtils;
 import org.openstreetmap.josm.actions.JosmAction;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.gui.widgets.ListPopupMenu;
-import org.openstreetmap.josm.plugins.PluginClassLoader;
 import org.openstreetmap.josm.testutils.annotations.Main;
 import org.openstreetmap.josm.testutils.annotations.Projection;
-import org.openstreetmap.josm.tools.ImageProvider;
-import org.openstreetmap.josm.tools.ResourceProvider;
 
 /**
  * Test class for {@link TodoDialog}
@@ -43,23 +42,12 @@ class TodoDialogTest {
     private JosmAction actAdd;
     private ListPopupMenu popupMenu;
 
-    @SuppressWarnings("unchecked")
-    private <T> T tryToReadFieldValue(String field) throws Exception {
-        return (T) ReflectionSupport.tryToReadFieldValue(TodoDialog.class.getDeclaredField(field), this.dialog).get();
-    }
-
     @BeforeEach
     void setup() throws Exception {
-        // This fixes an issue where tests might not be able to locate images in an IDE
-        // There is probably a better way to do this
-        if (ImageProvider.getIfAvailable("todo") == null) {
-            ResourceProvider.addAdditionalClassLoader(new PluginClassLoader(new URL[] {new File(".").toURI().toURL()},
-                    this.getClass().getClassLoader(), null));
-        }
-        this.dialog = new TodoDialog();
-        this.model = tryToReadFieldValue("model");
-        this.actAdd = tryToReadFieldValue("actAdd");
-        this.popupMenu = tryToReadFieldValue("popupMenu");
+        this.dialog = TodoDialogTestUtils.createDialog();
+        this.model = TodoDialogTestUtils.readField(this.dialog, "model");
+        this.actAdd = TodoDialogTestUtils.readField(this.dialog, "actAdd");
+        this.popupMenu = TodoDialogTestUtils.readField(this.dialog, "popupMenu");
         this.ds = new DataSet();
         MainApplication.getLayerManager().addLayer(new OsmDataLayer(this.ds, "TodoDialogTest", null));
         this.ds.addPrimitive(TestUtils.newNode("access=no"));
@@ -67,6 +55,11 @@ class TodoDialogTest {
         this.ds.addPrimitive(TestUtils.newNode("access=maybe"));
     }
 
+    @AfterEach
+    void tearDown() throws Exception {
+        TodoDialogTestUtils.destroy(this.dialog);
+    }
+
     @Test
     void testAdd() {
         // Sort the list for stability in tests
@@ -107,6 +100,95 @@ class TodoDialogTest {
         assertTrue(this.model.getTodoList().isEmpty());
     }
 
+    @Test
+    void testUndoRedo() {
+        this.testAdd(); // Add the primitives to the model
+        final var items = new ArrayList<>(this.model.getTodoList());
+        this.model.markItems(Collections.singleton(items.get(1)));
+        assertEquals(2, this.model.getSize());
+        this.model.clear();
+        assertEquals(0, this.model.getSize());
+        assertEquals(0, this.model.getDoneSize());
+
+        this.model.undo();
+        assertEquals(2, this.model.getSize());
+        assertEquals(1, this.model.getDoneSize());
+        this.model.undo();
+        assertEquals(items, this.model.getTodoList());
+        assertEquals(0, this.model.getDoneSize());
+        assertEquals(0, this.model.getStatistics().getAll().getDone());
+        assertTrue(this.model.getHistory().canRedo());
+
+        this.model.redo();
+        assertEquals(2, this.model.getSize());
+        assertFalse(this.model.getTodoList().contains(items.get(1)));
+        assertEquals(1, this.model.getStatistics().getAll().getDone());
+        assertEquals(3, this.model.getStatistics().getAll().getTotal());
+    }
+
+    @Test
+    void testItemStates() {
+        this.testAdd(); // Add the primitives to the model
+        final var items = new ArrayList<>(this.model.getTodoList());
+        final var indices = new BitSet();
+        indices.set(0);
+        indices.set(2);
+        this.model.setState(indices, TodoItemState.SKIPPED);
+        assertEquals(2, this.model.getCount(TodoItemState.SKIPPED));
+        assertEquals(1, this.model.getCount(TodoItemState.TODO));
+        assertEquals(List.of(items.get(0), items.get(2)), this.model.getItems(TodoItemState.SKIPPED));
+
+        this.model.markItems(Collections.singleton(items.get(0)));
+        assertEquals(1, this.model.getCount(TodoItemState.SKIPPED));
+        assertEquals(1, this.model.getCount(TodoItemState.DONE));
+        assertEquals(TodoItemState.SKIPPED, this.model.getState(1), "the states move with the items");
+
+        this.model.undo();
+        assertEquals(TodoItemState.SKIPPED, this.model.getState(0), "undo restores the state of marked items");
+        assertEquals(2, this.model.getCount(TodoItemState.SKIPPED));
+        this.model.undo();
+        assertEquals(3, this.model.getCount(TodoItemState.TODO));
+        assertEquals(0, this.model.getCount(TodoItemState.SKIPPED));
+    }
+
+    @Test
+    void testMultipleLists() {
+        this.testAdd(); // Add the primitives to the default list
+        final var defaultList = this.model.getCurrentList();
+        final var item = this.model.getTodoList().get(0);
+        assertTrue(this.model.addList("other"));
+        assertFalse(this.model.addList("other"));
+        this.model.switchList("other");
+        assertEquals(0, this.model.getSize());
+        this.model.addItems(Collections.singleton(new TodoListItem(item.layer(), item.primitive())));
+        assertEquals(item, this.model.getTodoList().get(0));
+
+        this.model.switchList(defaultList);
+        assertEquals(3, this.model.getSize());
+        assertTrue(this.model.removeList("other"));
+        assertEquals(1, this.model.getListNames().size());
+        assertFalse(this.model.removeList(defaultList));
+    }
+
+    @Test
+    void testActionsBeforeFirstShow() throws Exception {
+        final var lazy = new TodoDialog();
+        try {
+            final TodoListModel lazyModel = TodoDialogTestUtils.readField(lazy, "model");
+            final JosmAction lazyAdd = TodoDialogTestUtils.readField(lazy, "actAdd");
+            assertNull(TodoDialogTestUtils.readField(lazy, "lstPrimitives"), "The list view is only built when it is needed");
+            assertNotNull(TodoDialogTestUtils.readField(lazy, "actMark"),
+                    "The actions and their shortcuts exist before the dialog is first shown");
+
+            this.ds.setSelected(this.ds.allPrimitives());
+            lazyAdd.actionPerformed(null);
+            assertEquals(3, lazyModel.getSize());
+            assertNotNull(TodoDialogTestUtils.readField(lazy, "lstPrimitives"), "Using an action builds the dialog first");
+        } finally {
+            lazy.destroy();
+        }
+    }
+
     @Test
     void testNonRegression23092() {
     }
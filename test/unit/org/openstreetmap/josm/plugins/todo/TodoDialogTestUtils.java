@@ -0,0 +1,64 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+
+import org.junit.platform.commons.support.ReflectionSupport;
+import org.openstreetmap.josm.plugins.PluginClassLoader;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.tools.ImageProvider;
+import org.openstreetmap.josm.tools.ResourceProvider;
+
+/**
+ * The setup and cleanup shared by the tests of {@link TodoDialog}
+ */
+final class TodoDialogTestUtils {
+    private TodoDialogTestUtils() {
+        // Hide the default constructor
+    }
+
+    /**
+     * Create a dialog and build its content, as if it was shown
+     * @return The dialog, destroy it with {@link #destroy(TodoDialog)}
+     * @throws Exception if the plugin resources could not be found
+     */
+    static TodoDialog createDialog() throws Exception {
+        // This fixes an issue where tests might not be able to locate images in an IDE
+        // There is probably a better way to do this
+        if (ImageProvider.getIfAvailable("todo") == null) {
+            ResourceProvider.addAdditionalClassLoader(new PluginClassLoader(new URL[] {new File(".").toURI().toURL()},
+                    TodoDialogTestUtils.class.getClassLoader(), null));
+        }
+        final var dialog = new TodoDialog();
+        dialog.initialize();
+        return dialog;
+    }
+
+    /**
+     * Read a private field of a dialog
+     * @param dialog The dialog
+     * @param field The name of the field
+     * @return The value of the field
+     * @throws Exception if the field does not exist
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T readField(TodoDialog dialog, String field) throws Exception {
+        return (T) ReflectionSupport.tryToReadFieldValue(TodoDialog.class.getDeclaredField(field), dialog).get();
+    }
+
+    /**
+     * Destroy a dialog, which unregisters its listeners and its {@link TodoListService}, and delete the store of the
+     * reviewed objects it created
+     * @param dialog The dialog, may be {@code null}
+     * @throws Exception if the store could not be deleted
+     */
+    static void destroy(TodoDialog dialog) throws Exception {
+        if (dialog == null)
+            return;
+        dialog.destroy();
+        final var store = Config.getDirs().getUserDataDirectory(false).toPath().resolve("todo").resolve("reviewed.bin");
+        Files.deleteIfExists(store);
+    }
+}
@@ -0,0 +1,110 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.DefaultListSelectionModel;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * Test class for {@link TodoIdFile}
+ */
+@BasicPreferences
+@Projection
+class TodoIdFileTest {
+    @TempDir
+    Path directory;
+    private DataSet ds;
+    private OsmDataLayer layer;
+    private TodoListItem node;
+    private TodoListItem way;
+    private TodoListItem relation;
+    private TodoListItem newNode;
+
+    @BeforeEach
+    void setup() {
+        this.ds = new DataSet();
+        this.layer = new OsmDataLayer(this.ds, "TodoIdFileTest", null);
+        final var n = new Node(1, 1);
+        final var w = new Way(2, 1);
+        final var r = new Relation(3, 1);
+        final var added = new Node();
+        List.of(n, w, r, added).forEach(this.ds::addPrimitive);
+        this.node = new TodoListItem(this.layer, n);
+        this.way = new TodoListItem(this.layer, w);
+        this.relation = new TodoListItem(this.layer, r);
+        this.newNode = new TodoListItem(this.layer, added);
+    }
+
+    @Test
+    void testRoundTrip() throws Exception {
+        final var file = this.directory.resolve("ids.txt");
+        TodoIdFile.write(file, List.of(this.node, this.newNode, this.way), List.of(this.relation));
+        assertEquals(List.of("n1", "w2", "r3 done"), Files.readAllLines(file, StandardCharsets.UTF_8),
+                "New objects are not written");
+
+        final var ids = TodoIdFile.read(file);
+        assertEquals(List.of(new SimplePrimitiveId(1, OsmPrimitiveType.NODE), new SimplePrimitiveId(2, OsmPrimitiveType.WAY)),
+                ids.todo());
+        assertEquals(List.of(new SimplePrimitiveId(3, OsmPrimitiveType.RELATION)), ids.done());
+    }
+
+    @Test
+    void testRead() throws Exception {
+        final var file = this.directory.resolve("ids.txt");
+        Files.write(file, List.of("# A shard", "", "  n1  ", "w2 DONE", "r3 other"), StandardCharsets.UTF_8);
+        final var ids = TodoIdFile.read(file);
+        assertEquals(2, ids.todo().size(), "Unknown markers are todo items");
+        assertEquals(List.of(new SimplePrimitiveId(2, OsmPrimitiveType.WAY)), ids.done());
+
+        Files.write(file, List.of("n1", "x2"), StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> TodoIdFile.read(file));
+    }
+
+    @Test
+    void testImportIsOneUndoStep() throws Exception {
+        final var file = this.directory.resolve("ids.txt");
+        TodoIdFile.write(file, List.of(this.node, this.way), List.of(this.relation));
+        final var ids = TodoIdFile.read(file);
+        final var todo = TodoIdSet.of(this.layer, ids.todo()).toItems();
+        final var done = TodoIdSet.of(this.layer, ids.done()).toItems();
+
+        // Like the import action of the dialog
+        final var model = new TodoListModel(new DefaultListSelectionModel());
+        model.batch(() -> {
+            final var all = new ArrayList<>(todo);
+            all.addAll(done);
+            model.addItems(all);
+            model.markItems(done);
+        });
+        assertEquals(Set.of(this.node, this.way), Set.copyOf(model.getTodoList()));
+        assertEquals(Set.of(this.relation), Set.copyOf(model.getDoneList()));
+
+        model.undo();
+        assertEquals(0, model.getSize());
+        assertEquals(0, model.getDoneSize());
+        assertFalse(model.getHistory().canUndo(), "Adding and marking are one step");
+    }
+}
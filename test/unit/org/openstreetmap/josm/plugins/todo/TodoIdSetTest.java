@@ -0,0 +1,180 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import javax.swing.DefaultListSelectionModel;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * Test class for {@link TodoIdSet} and the set operations of {@link TodoListCore}
+ */
+@BasicPreferences
+@Projection
+class TodoIdSetTest {
+    /** The number of ids in a chunk */
+    private static final long CHUNK = 1 << 16;
+    private DataSet ds;
+    private OsmDataLayer layer;
+
+    @BeforeEach
+    void setup() {
+        this.ds = new DataSet();
+        this.layer = new OsmDataLayer(this.ds, "TodoIdSetTest", null);
+    }
+
+    private static List<PrimitiveId> nodeIds(LongStream ids) {
+        return ids.mapToObj(id -> (PrimitiveId) new SimplePrimitiveId(id, OsmPrimitiveType.NODE)).toList();
+    }
+
+    private TodoIdSet set(LongStream ids) {
+        return TodoIdSet.of(this.layer, nodeIds(ids));
+    }
+
+    private TodoListItem item(long id) {
+        var node = (Node) this.ds.getPrimitiveById(id, OsmPrimitiveType.NODE);
+        if (node == null) {
+            node = new Node(id, 1);
+            this.ds.addPrimitive(node);
+        }
+        return new TodoListItem(this.layer, node);
+    }
+
+    @Test
+    void testArrayChunk() {
+        final var set = set(LongStream.of(5, 3, 3, 70_000, 1));
+        assertEquals(4, set.size(), "Duplicates are dropped");
+        assertTrue(set.contains(item(3)));
+        assertTrue(set.contains(item(70_000)));
+        assertFalse(set.contains(item(2)));
+        assertFalse(set.contains(item(3 + CHUNK * 2)));
+    }
+
+    @Test
+    void testBitmapChunk() {
+        // More ids than fit in an array chunk
+        final var set = set(LongStream.range(CHUNK, CHUNK + 5_000).filter(id -> id % 7 != 0));
+        assertEquals(LongStream.range(CHUNK, CHUNK + 5_000).filter(id -> id % 7 != 0).count(), set.size());
+        assertTrue(set.contains(item(CHUNK + 1)));
+        assertFalse(set.contains(item(CHUNK + 5)), "A multiple of 7");
+        assertFalse(set.contains(item(1)));
+    }
+
+    @Test
+    void testTypesAndLayers() {
+        final var set = set(LongStream.of(1));
+        assertFalse(set.contains(new TodoListItem(this.layer, new Way(1, 1))), "Other types are not in the set");
+        final var other = new OsmDataLayer(new DataSet(), "TodoIdSetTest 2", null);
+        assertFalse(set.contains(new TodoListItem(other, new Node(1, 1))), "Other layers are not in the set");
+    }
+
+    @Test
+    void testNewObjects() {
+        final var node = new Node();
+        this.ds.addPrimitive(node);
+        final var set = TodoIdSet.of(List.of(new TodoListItem(this.layer, node)));
+        assertEquals(1, set.size());
+        assertTrue(set.contains(new TodoListItem(this.layer, node)));
+        assertEquals(List.of(new TodoListItem(this.layer, node)), set.toItems());
+    }
+
+    @Test
+    void testMergeArrays() {
+        final var a = set(LongStream.of(1, 2, 3, 10, CHUNK + 1));
+        final var b = set(LongStream.of(2, 3, 4, 11, 2 * CHUNK));
+        assertEquals(2, a.and(b).size());
+        assertTrue(a.and(b).contains(item(2)));
+        assertTrue(a.and(b).contains(item(3)));
+        final var difference = a.andNot(b);
+        assertEquals(3, difference.size());
+        assertTrue(difference.contains(item(1)));
+        assertTrue(difference.contains(item(10)));
+        assertTrue(difference.contains(item(CHUNK + 1)), "Chunks that are only in this set are kept");
+        assertFalse(b.andNot(b).contains(item(2)));
+        assertEquals(0, a.and(set(LongStream.of(5))).size());
+    }
+
+    @Test
+    void testBitmapToArray() {
+        final var even = set(LongStream.range(0, 10_000).filter(id -> id % 2 == 0));
+        final var odd = set(LongStream.range(0, 10_000).filter(id -> id % 2 == 1));
+        final var some = set(LongStream.range(0, 10_000).filter(id -> id % 1_000 == 0));
+        assertEquals(0, even.and(odd).size(), "Disjoint bitmaps give an empty set");
+        assertEquals(5_000, even.andNot(odd).size());
+        // The intersection of two bitmaps is small enough for an array
+        final var small = even.and(set(LongStream.range(0, 10_000).filter(id -> id % 10 == 0)));
+        assertEquals(1_000, small.size());
+        assertTrue(small.contains(item(20)));
+        assertFalse(small.contains(item(22)));
+        // Bitmaps combined with arrays
+        assertEquals(10, even.and(some).size());
+        assertEquals(10, some.and(even).size());
+        assertEquals(4_990, even.andNot(some).size());
+        assertEquals(0, some.andNot(even).size());
+    }
+
+    @Test
+    void testArrayMaxBoundary() {
+        // 4096 ids fit in an array chunk, 4097 ids are a bitmap
+        final var array = set(LongStream.range(1, 4_097).map(id -> id * 2));
+        final var bitmap = set(LongStream.range(1, 4_098).map(id -> id * 2));
+        assertEquals(4_096, array.size());
+        assertEquals(4_097, bitmap.size());
+        final var difference = bitmap.andNot(set(LongStream.of(2)));
+        assertEquals(4_096, difference.size(), "A bitmap that shrinks to an array");
+        assertFalse(difference.contains(item(2)));
+        assertTrue(difference.contains(item(8_194)));
+        assertEquals(4_096, bitmap.and(array).size());
+        assertEquals(1, bitmap.andNot(array).size());
+        assertTrue(bitmap.andNot(array).contains(item(8_194)));
+    }
+
+    @Test
+    void testToItems() {
+        final var items = List.of(item(1), item(2), item(CHUNK + 3));
+        final var set = set(LongStream.of(1, 2, CHUNK + 3, 99));
+        assertEquals(new HashSet<>(items), new HashSet<>(set.toItems()), "Objects that are not in the layer are skipped");
+    }
+
+    @Test
+    void testModelOperations() {
+        final var model = new TodoListModel(new DefaultListSelectionModel());
+        final var todo = new ArrayList<TodoListItem>();
+        for (var id = 1; id <= 6; id++) {
+            todo.add(item(id));
+        }
+        item(7);
+        model.addItems(todo);
+
+        model.intersect(set(LongStream.of(1, 2, 3, 4)));
+        assertEquals(todo.subList(0, 4), model.getTodoList());
+        model.subtract(set(LongStream.of(2, 7)));
+        assertEquals(List.of(todo.get(0), todo.get(2), todo.get(3)), model.getTodoList());
+        model.union(set(LongStream.of(1, 7)));
+        assertEquals(List.of(todo.get(0), todo.get(2), todo.get(3), item(7)), model.getTodoList());
+
+        model.symmetricDifference(set(LongStream.of(1, 3, 5)));
+        assertEquals(List.of(todo.get(3), item(7), todo.get(4)), model.getTodoList());
+        model.undo();
+        assertEquals(List.of(todo.get(0), todo.get(2), todo.get(3), item(7)), model.getTodoList(),
+                "The symmetric difference is undone in one step");
+    }
+}
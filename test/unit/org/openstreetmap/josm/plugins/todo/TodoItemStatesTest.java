@@ -0,0 +1,82 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.BitSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for {@link TodoItemStates}
+ */
+class TodoItemStatesTest {
+    private static BitSet bits(int... indices) {
+        final var result = new BitSet();
+        for (var index : indices) {
+            result.set(index);
+        }
+        return result;
+    }
+
+    private static void assertCounts(TodoItemStates states, int inProgress, int skipped, int needsSurvey) {
+        assertEquals(inProgress, states.count(TodoItemState.IN_PROGRESS), "in progress");
+        assertEquals(skipped, states.count(TodoItemState.SKIPPED), "skipped");
+        assertEquals(needsSurvey, states.count(TodoItemState.NEEDS_SURVEY), "needs survey");
+        assertEquals(inProgress + skipped + needsSurvey, states.countStateSet());
+    }
+
+    @Test
+    void testSet() {
+        final var states = new TodoItemStates();
+        states.set(bits(1, 2, 3), TodoItemState.IN_PROGRESS);
+        states.set(bits(3, 4), TodoItemState.SKIPPED);
+        states.set(bits(5), TodoItemState.NEEDS_SURVEY);
+        assertCounts(states, 2, 2, 1);
+        assertEquals(TodoItemState.TODO, states.get(0));
+        assertEquals(TodoItemState.SKIPPED, states.get(3));
+        assertEquals(bits(1, 2), states.indicesOf(TodoItemState.IN_PROGRESS, 8));
+        assertEquals(bits(0, 6, 7), states.indicesOf(TodoItemState.TODO, 8));
+
+        // Setting an item to its current state does not count it twice
+        states.set(bits(4, 5), TodoItemState.SKIPPED);
+        assertCounts(states, 2, 3, 0);
+        states.set(bits(0, 1, 2, 3, 4, 5, 6, 7, 100), TodoItemState.TODO);
+        assertCounts(states, 0, 0, 0);
+    }
+
+    @Test
+    void testRemoveAndInsert() {
+        final var states = new TodoItemStates();
+        states.set(bits(1, 4), TodoItemState.IN_PROGRESS);
+        states.set(bits(6), TodoItemState.NEEDS_SURVEY);
+        final var removed = bits(0, 1, 6);
+        final var saved = states.get(removed);
+        assertArrayEquals(new byte[] {0, 1, 3}, saved);
+
+        states.remove(removed);
+        assertCounts(states, 1, 0, 0);
+        assertEquals(TodoItemState.IN_PROGRESS, states.get(2), "The following items move down");
+
+        states.insert(removed, saved);
+        assertCounts(states, 2, 0, 1);
+        assertEquals(TodoItemState.IN_PROGRESS, states.get(1));
+        assertEquals(TodoItemState.IN_PROGRESS, states.get(4));
+        assertEquals(TodoItemState.NEEDS_SURVEY, states.get(6));
+        assertNull(states.get(bits(0, 2, 3)), "Items in the todo state need no saved states");
+    }
+
+    @Test
+    void testTruncate() {
+        final var states = new TodoItemStates();
+        states.set(bits(1, 5), TodoItemState.SKIPPED);
+        states.set(bits(7), TodoItemState.IN_PROGRESS);
+        states.truncate(3);
+        assertCounts(states, 0, 1, 0);
+        assertEquals(TodoItemState.TODO, states.get(5));
+        states.truncate(0);
+        assertCounts(states, 0, 0, 0);
+    }
+}
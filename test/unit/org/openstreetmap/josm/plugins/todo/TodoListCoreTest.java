@@ -0,0 +1,369 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSource;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.event.PrimitivesRemovedEvent;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * Test class for {@link TodoListCore} without a GUI
+ */
+@BasicPreferences
+@Projection
+class TodoListCoreTest {
+    private TodoListCore core;
+    private TodoListSelection selection;
+    private final List<String> events = new ArrayList<>();
+    private final List<TodoListItem> items = new ArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        this.selection = new TodoListSelection.Indices();
+        this.core = new TodoListCore(this.selection);
+        this.core.addListener(new TodoListCore.Listener() {
+            @Override
+            public void intervalAdded(int from, int to) {
+                events.add("added " + from + "-" + to);
+            }
+
+            @Override
+            public void intervalRemoved(int from, int to) {
+                events.add("removed " + from + "-" + to);
+            }
+
+            @Override
+            public void contentsChanged(int from, int to) {
+                events.add("changed " + from + "-" + to);
+            }
+        });
+        final var ds = new DataSet();
+        final var layer = new OsmDataLayer(ds, "TodoListCoreTest", null);
+        for (var i = 0; i < 10; i++) {
+            final var node = new Node(new LatLon(50 + i * 1e-3, 8));
+            ds.addPrimitive(node);
+            this.items.add(new TodoListItem(layer, node));
+        }
+    }
+
+    /**
+     * Get the events fired since the last call, and forget them
+     */
+    private List<String> takeEvents() {
+        final var taken = List.copyOf(this.events);
+        this.events.clear();
+        return taken;
+    }
+
+    @Test
+    void testAddMarkUndo() {
+        this.core.addItems(this.items.subList(0, 3));
+        assertEquals(List.of("added 0-2"), takeEvents());
+        assertEquals(3, this.core.getSize());
+        assertEquals(0, this.selection.getMinSelectionIndex());
+
+        this.core.addItems(this.items.subList(3, 5));
+        assertEquals(List.of("added 3-4"), takeEvents());
+
+        this.core.markItems(List.of(this.items.get(1)));
+        assertEquals(List.of("removed 1-1"), takeEvents());
+        assertEquals(4, this.core.getSize());
+        assertEquals(1, this.core.getDoneSize());
+        assertEquals(this.items.get(2), this.core.getElementAt(1));
+
+        this.core.undo();
+        assertEquals(List.of("added 1-1"), takeEvents());
+        assertEquals(this.items.get(1), this.core.getElementAt(1));
+        assertEquals(0, this.core.getDoneSize());
+        assertEquals(1, this.selection.getMinSelectionIndex());
+
+        this.core.redo();
+        assertEquals(List.of("removed 1-1"), takeEvents());
+        assertEquals(1, this.core.getDoneSize());
+
+        this.core.undo();
+        this.core.undo();
+        assertEquals(List.of("added 1-1", "removed 3-4"), takeEvents());
+        assertEquals(this.items.subList(0, 3), this.core.getTodoList());
+    }
+
+    @Test
+    void testMarkSelected() {
+        this.core.addItems(this.items.subList(0, 3));
+        takeEvents();
+        this.selection.setSelectionInterval(2, 2);
+
+        this.core.markSelected();
+        assertEquals(List.of("removed 2-2"), takeEvents());
+        assertTrue(this.core.getDoneList().contains(this.items.get(2)));
+        assertEquals(0, this.selection.getMinSelectionIndex(), "The selection wraps around");
+
+        this.core.undo();
+        assertEquals(List.of("added 2-2"), takeEvents());
+        assertEquals(2, this.selection.getMinSelectionIndex());
+    }
+
+    @Test
+    void testMarkSeveralRuns() {
+        this.core.addItems(this.items);
+        takeEvents();
+
+        this.core.markItems(List.of(this.items.get(1), this.items.get(2), this.items.get(6)));
+        assertEquals(List.of("removed 6-6", "removed 1-2"), takeEvents(), "Runs are removed from the end");
+
+        this.core.undo();
+        assertEquals(List.of("added 1-2", "added 6-6"), takeEvents(), "Runs are added from the start");
+        assertEquals(this.items, this.core.getTodoList());
+    }
+
+    @Test
+    void testMarkSeveralRunsInBatch() {
+        this.core.addItems(this.items);
+        takeEvents();
+
+        this.core.batch(() -> this.core.markItems(List.of(this.items.get(1), this.items.get(2), this.items.get(6))));
+        assertEquals(List.of("removed 1-3", "changed 1-3"), takeEvents(),
+                "One block is removed at the first index, the rest of the span is changed");
+        assertEquals(7, this.core.getSize());
+
+        this.core.batch(this.core::undo);
+        assertEquals(List.of("added 1-3", "changed 4-6"), takeEvents(),
+                "One block is added at the first index, the rest of the span is changed");
+        assertEquals(this.items, this.core.getTodoList());
+    }
+
+    @Test
+    void testSelection() {
+        this.core.addItems(this.items);
+        this.selection.setSelectedIndices(IntStream.of(7, 2, 3));
+        assertEquals(List.of(this.items.get(2), this.items.get(3), this.items.get(7)), this.core.getSelected());
+        takeEvents();
+
+        this.core.update(List.of(this.items.get(3), this.items.get(4)));
+        assertEquals(List.of("changed 3-4"), takeEvents());
+        assertEquals(List.of(this.items.get(2), this.items.get(3), this.items.get(7)), this.core.getSelected(),
+                "Updating items keeps the selection");
+
+        this.core.markSelectedItems();
+        assertEquals(List.of("removed 7-7", "removed 2-3"), takeEvents());
+        assertEquals(3, this.core.getDoneSize());
+        assertEquals(List.of(this.items.get(4)), this.core.getSelected(), "The item after the first marked one is selected");
+    }
+
+    /**
+     * Check that the indices kept by the geometry match the todo list
+     */
+    private void assertIndices() {
+        final var todoList = this.core.getTodoList();
+        // Look up the items from the end, so the indices of the start of the list are assigned by a walk
+        for (var i = todoList.size() - 1; i >= 0; i--) {
+            assertEquals(i, this.core.getGeometry().indexOf(todoList.get(i), todoList));
+        }
+        for (var item : this.core.getDoneList()) {
+            assertEquals(-1, this.core.getGeometry().indexOf(item, todoList), "Done items have no index");
+        }
+    }
+
+    @Test
+    void testIndices() {
+        this.core.addItems(this.items.subList(0, 6));
+        assertIndices();
+        this.core.addItems(this.items.subList(6, 10));
+        assertIndices();
+
+        this.core.markItems(List.of(this.items.get(1), this.items.get(6)));
+        assertIndices();
+        this.core.undo();
+        assertIndices();
+        this.core.removeItems(List.of(this.items.get(9), this.items.get(0)));
+        assertIndices();
+        assertEquals(-1, this.core.getGeometry().indexOf(this.items.get(0), this.core.getTodoList()));
+        this.core.undo();
+        assertIndices();
+
+        this.core.markAll();
+        assertIndices();
+        this.core.undo();
+        assertIndices();
+        this.core.unmarkAll();
+        this.core.markItems(List.of(this.items.get(3)));
+        this.core.unmarkAll();
+        assertIndices();
+        this.core.undo();
+        assertIndices();
+        this.core.clear();
+        this.core.undo();
+        assertIndices();
+        assertEquals(this.items.size() - 1, this.core.getSize());
+    }
+
+    @Test
+    void testSwitchList() {
+        this.core.addItems(this.items.subList(0, 5));
+        final var shown = this.core.getCurrentList();
+        this.core.addList("other");
+        takeEvents();
+        this.core.switchList("other");
+        assertEquals(List.of("removed 0-4"), takeEvents());
+        this.core.addItems(this.items.subList(5, 7));
+        takeEvents();
+        this.core.switchList(shown);
+        assertEquals(List.of("added 2-4", "changed 0-1"), takeEvents());
+    }
+
+    @Test
+    void testSwitchListKeepsPassOrder() {
+        this.core.addItems(this.items.subList(0, 5));
+        this.core.setPriorityEnabled(true);
+        this.core.incrementSelection();
+        final var first = this.core.getTodoList().get(this.selection.getMinSelectionIndex());
+        this.core.incrementSelection();
+        final var second = this.core.getTodoList().get(this.selection.getMinSelectionIndex());
+        assertNotEquals(first, second);
+
+        final var shown = this.core.getCurrentList();
+        this.core.addList("other");
+        this.core.switchList("other");
+        this.core.switchList(shown);
+        assertEquals(second, this.core.getTodoList().get(this.selection.getMinSelectionIndex()));
+        this.core.incrementSelection();
+        final var third = this.core.getTodoList().get(this.selection.getMinSelectionIndex());
+        assertFalse(third.equals(first) || third.equals(second), "The passed items stay behind the other items");
+    }
+
+    @Test
+    void testFindMergeTarget() {
+        final var source = new OsmDataLayer(new DataSet(), "source", null);
+        final var target = new OsmDataLayer(new DataSet(), "target", null);
+        final var unrelated = new OsmDataLayer(new DataSet(), "unrelated", null);
+        for (var layer : List.of(source, target)) {
+            layer.getDataSet().addPrimitive(new Node(1, 1));
+        }
+        final var shown = this.core.getCurrentList();
+        this.core.addList("other");
+        this.core.switchList("other");
+        this.core.addItems(List.of(new TodoListItem(source, source.getDataSet().getNodes().iterator().next())));
+        this.core.switchList(shown);
+
+        assertEquals(target, this.core.findMergeTarget(source, List.of(unrelated, target)),
+                "The items of lists that are not shown are sampled");
+        assertNull(this.core.findMergeTarget(source, List.of(unrelated)));
+    }
+
+    @Test
+    void testIsMerged() {
+        final var source = new OsmDataLayer(new DataSet(), "source", null);
+        final var target = new OsmDataLayer(new DataSet(), "target", null);
+        assertFalse(TodoListCore.isMerged(source, target), "Layers without data sources are not known to be merged");
+
+        final var dataSource = new DataSource(new Bounds(50, 8, 51, 9), "test");
+        source.getDataSet().addDataSource(dataSource);
+        target.getDataSet().addDataSource(new DataSource(new Bounds(50, 8, 51, 9), "test"));
+        assertFalse(TodoListCore.isMerged(source, target), "Another download of the same area is not a merge");
+
+        target.getDataSet().addDataSource(dataSource);
+        assertTrue(TodoListCore.isMerged(source, target));
+    }
+
+    @Test
+    void testBulkChange() {
+        this.core.addItems(this.items);
+        final var change = this.core.startBulkChange(TodoListCore.BulkOperation.CLEAR);
+        while (change.step(4)) {
+            assertTrue(this.core.getHistory().canUndo());
+        }
+        change.finish();
+        assertEquals(0, this.core.getSize());
+        assertEquals(10, change.getChanged());
+
+        this.core.undo();
+        assertEquals(this.items, this.core.getTodoList(), "The chunks are undone in one step");
+        this.core.undo();
+        assertEquals(0, this.core.getSize());
+    }
+
+    @Test
+    void testBulkChangeInterleavedAdd() {
+        this.core.addItems(this.items.subList(0, 8));
+        final var change = this.core.startBulkChange(TodoListCore.BulkOperation.MARK_ALL);
+        assertTrue(change.step(3));
+        assertEquals(this.items.subList(0, 5), this.core.getTodoList());
+
+        this.core.addItems(this.items.subList(8, 10));
+        assertFalse(change.step(3), "A change of the model stops the bulk change");
+        assertTrue(change.isAborted());
+        change.finish();
+        assertEquals(7, this.core.getSize());
+        assertEquals(3, this.core.getDoneSize());
+
+        this.core.undo();
+        assertEquals(this.items.subList(0, 5), this.core.getTodoList());
+        this.core.undo();
+        assertEquals(this.items.subList(0, 8), this.core.getTodoList(), "The applied chunks are undone after the addition");
+        assertEquals(0, this.core.getDoneSize());
+    }
+
+    @Test
+    void testBulkChangeInterleavedUndo() {
+        this.core.addItems(this.items.subList(0, 8));
+        final var change = this.core.startBulkChange(TodoListCore.BulkOperation.MARK_ALL);
+        assertTrue(change.step(3));
+        this.core.undo();
+        assertEquals(this.items.subList(0, 8), this.core.getTodoList(), "The applied chunk is undone");
+
+        assertFalse(change.step(3));
+        change.finish();
+        assertEquals(this.items.subList(0, 8), this.core.getTodoList());
+        assertEquals(0, this.core.getDoneSize());
+        this.core.undo();
+        assertEquals(0, this.core.getSize(), "The addition before the bulk change is still undone next");
+    }
+
+    @Test
+    void testPrimitivesRemoved() {
+        this.core.addItems(this.items.subList(0, 3));
+        this.core.markItems(List.of(this.items.get(0)));
+        takeEvents();
+
+        final var ds = (DataSet) this.items.get(0).layer().getDataSet();
+        final var removed = List.of((Node) this.items.get(0).primitive(), (Node) this.items.get(2).primitive());
+        removed.forEach(ds::removePrimitive);
+        this.core.primitivesRemoved(new PrimitivesRemovedEvent(ds, removed, false));
+        assertEquals(List.of("removed 1-1"), takeEvents());
+        assertEquals(List.of(this.items.get(1)), this.core.getTodoList());
+        assertEquals(0, this.core.getDoneSize(), "Done items of removed objects are removed");
+    }
+
+    @Test
+    void testRemoveAndAddDone() {
+        this.core.addItems(this.items.subList(0, 3));
+        this.core.markItems(List.of(this.items.get(0)));
+        takeEvents();
+
+        // Adding a done item moves it back to the end of the todo list
+        this.core.addItems(List.of(this.items.get(0)));
+        assertEquals(List.of("added 2-2"), takeEvents());
+        assertEquals(0, this.core.getDoneSize());
+
+        this.core.removeItems(List.of(this.items.get(1)));
+        assertEquals(List.of("removed 0-0"), takeEvents());
+        assertEquals(List.of(this.items.get(2), this.items.get(0)), this.core.getTodoList());
+    }
+}
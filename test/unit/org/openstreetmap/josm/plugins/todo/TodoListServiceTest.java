@@ -0,0 +1,119 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.DefaultListSelectionModel;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * Test class for {@link TodoListService}
+ */
+@BasicPreferences
+@Projection
+class TodoListServiceTest {
+    private TodoListModel model;
+    private TodoListService service;
+    private OsmDataLayer layer;
+    private final AtomicInteger initialized = new AtomicInteger();
+    private final List<PrimitiveId> ids = new ArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        this.model = new TodoListModel(new DefaultListSelectionModel());
+        this.service = new TodoListService(this.model, this.initialized::incrementAndGet);
+        final var ds = new DataSet();
+        this.layer = new OsmDataLayer(ds, "TodoListServiceTest", null);
+        for (var i = 1; i <= 5; i++) {
+            final var node = new Node(i, 1);
+            node.setCoor(new LatLon(50 + i * 1e-3, 8));
+            ds.addPrimitive(node);
+            this.ids.add(node.getPrimitiveId());
+        }
+    }
+
+    @Test
+    void testAddMarkRemove() {
+        final var missing = new SimplePrimitiveId(100, OsmPrimitiveType.NODE);
+        final var withMissing = new ArrayList<>(this.ids);
+        withMissing.add(missing);
+
+        assertEquals(5, this.service.addItems(this.layer, withMissing), "Ids that are not in the layer are ignored");
+        assertEquals(5, this.service.getTodoCount());
+        assertTrue(this.initialized.get() > 0, "The dialog is initialized before the first change");
+
+        assertEquals(2, this.service.markItems(this.layer, this.ids.subList(0, 2)));
+        assertEquals(3, this.service.getTodoCount());
+        assertEquals(2, this.service.getDoneCount());
+        assertEquals(List.of(3L, 4L, 5L), this.service.getTodoPrimitives().map(p -> p.getUniqueId()).toList());
+
+        assertEquals(2, this.service.removeItems(this.layer, List.of(this.ids.get(0), this.ids.get(4))));
+        assertEquals(2, this.service.getTodoCount());
+        assertEquals(1, this.service.getDoneCount());
+        assertEquals(List.of(2L), this.service.getDonePrimitives().map(p -> p.getUniqueId()).toList());
+
+        assertEquals(0, this.service.addItems(this.layer, List.of()));
+        assertEquals(0, this.service.markItems(this.layer, List.of(missing)));
+    }
+
+    @Test
+    void testSnapshots() {
+        this.service.addItems(this.layer, this.ids);
+        final var todo = this.service.getTodoPrimitives();
+        this.service.removeItems(this.layer, this.ids);
+        assertEquals(5, todo.count(), "The stream is a snapshot of the list");
+        assertEquals(0, this.service.getTodoCount());
+    }
+
+    @Test
+    void testSingleUndoStep() {
+        this.service.addItems(this.layer, this.ids);
+        this.service.markItems(this.layer, this.ids.subList(0, 3));
+        GuiHelper.runInEDTAndWait(this.model::undo);
+        assertEquals(5, this.service.getTodoCount(), "Marking several items is undone at once");
+        assertEquals(0, this.service.getDoneCount());
+    }
+
+    @Test
+    void testListenerCoalescing() {
+        final var notifications = new AtomicInteger();
+        final TodoListService.Listener listener = s -> notifications.incrementAndGet();
+        this.service.addListener(listener);
+
+        // Several changes in one EDT task are reported once
+        GuiHelper.runInEDTAndWait(() -> {
+            this.service.addItems(this.layer, this.ids);
+            this.service.markItems(this.layer, this.ids.subList(0, 2));
+            this.service.removeItems(this.layer, this.ids.subList(4, 5));
+        });
+        GuiHelper.runInEDTAndWait(() -> { /* Wait for the notification */ });
+        assertEquals(1, notifications.get());
+
+        // Changes in later tasks are reported again
+        this.service.markItems(this.layer, this.ids.subList(2, 3));
+        GuiHelper.runInEDTAndWait(() -> { /* Wait for the notification */ });
+        assertEquals(2, notifications.get());
+
+        this.service.removeListener(listener);
+        this.service.markItems(this.layer, this.ids.subList(3, 4));
+        GuiHelper.runInEDTAndWait(() -> { /* Wait for the notification */ });
+        assertEquals(2, notifications.get(), "Removed listeners are not notified");
+    }
+}
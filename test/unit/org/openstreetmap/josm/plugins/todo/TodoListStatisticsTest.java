@@ -0,0 +1,129 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.TestUtils;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Test class for {@link TodoListStatistics}
+ */
+@BasicPreferences
+class TodoListStatisticsTest {
+    private TodoListStatistics statistics;
+    private OsmDataLayer layer1;
+    private OsmDataLayer layer2;
+    private TodoListItem node1;
+    private TodoListItem node2;
+    private TodoListItem way;
+
+    @BeforeEach
+    void setup() {
+        this.statistics = new TodoListStatistics();
+        this.layer1 = new OsmDataLayer(new DataSet(), "TodoListStatisticsTest 1", null);
+        this.layer2 = new OsmDataLayer(new DataSet(), "TodoListStatisticsTest 2", null);
+        this.node1 = new TodoListItem(this.layer1, TestUtils.newNode(""));
+        this.node2 = new TodoListItem(this.layer2, TestUtils.newNode(""));
+        this.way = new TodoListItem(this.layer1, new Way());
+    }
+
+    private static void assertCounter(int total, int done, TodoListStatistics.Counter counter) {
+        assertEquals(total, counter.getTotal(), "total");
+        assertEquals(done, counter.getDone(), "done");
+    }
+
+    @Test
+    void testAdded() {
+        this.statistics.added(this.node1, false);
+        this.statistics.added(this.node2, true);
+        this.statistics.added(this.way, false);
+
+        assertCounter(3, 1, this.statistics.getAll());
+        assertCounter(2, 0, this.statistics.getPerLayer().get(this.layer1));
+        assertCounter(1, 1, this.statistics.getPerLayer().get(this.layer2));
+        assertCounter(2, 1, this.statistics.getPerType().get(OsmPrimitiveType.NODE));
+        assertCounter(1, 0, this.statistics.getPerType().get(OsmPrimitiveType.WAY));
+    }
+
+    @Test
+    void testRemoved() {
+        this.statistics.added(this.node1, false);
+        this.statistics.added(this.node2, true);
+        this.statistics.added(this.way, false);
+
+        this.statistics.removed(this.node2, true);
+        assertCounter(2, 0, this.statistics.getAll());
+        assertFalse(this.statistics.getPerLayer().containsKey(this.layer2), "Empty layers are forgotten");
+        assertCounter(1, 0, this.statistics.getPerType().get(OsmPrimitiveType.NODE));
+
+        this.statistics.removed(this.node1, false);
+        assertCounter(1, 0, this.statistics.getAll());
+        assertCounter(1, 0, this.statistics.getPerLayer().get(this.layer1));
+    }
+
+    @Test
+    void testMarkedAndUnmarked() {
+        this.statistics.added(this.node1, false);
+        this.statistics.added(this.way, false);
+
+        this.statistics.marked(this.node1);
+        assertCounter(2, 1, this.statistics.getAll());
+        assertCounter(1, 1, this.statistics.getPerType().get(OsmPrimitiveType.NODE));
+        assertCounter(1, 0, this.statistics.getPerType().get(OsmPrimitiveType.WAY));
+        assertTrue(this.statistics.getItemsPerMinute() > 0, "Marking counts for the done rate");
+
+        this.statistics.unmarked(this.node1);
+        assertCounter(2, 0, this.statistics.getAll());
+        assertCounter(2, 0, this.statistics.getPerLayer().get(this.layer1));
+
+        this.statistics.remarked(this.way);
+        assertCounter(2, 1, this.statistics.getAll());
+        assertCounter(1, 1, this.statistics.getPerType().get(OsmPrimitiveType.WAY));
+    }
+
+    @Test
+    void testRemarkedDoesNotCountForRate() {
+        this.statistics.added(this.node1, false);
+        this.statistics.remarked(this.node1);
+        assertEquals(0, this.statistics.getItemsPerMinute());
+    }
+
+    @Test
+    void testMarkedAllAndUnmarkedAll() {
+        this.statistics.added(this.node1, false);
+        this.statistics.added(this.node2, true);
+        this.statistics.added(this.way, false);
+
+        this.statistics.markedAll();
+        assertCounter(3, 3, this.statistics.getAll());
+        assertCounter(2, 2, this.statistics.getPerLayer().get(this.layer1));
+        assertCounter(1, 1, this.statistics.getPerLayer().get(this.layer2));
+        assertCounter(2, 2, this.statistics.getPerType().get(OsmPrimitiveType.NODE));
+        assertCounter(1, 1, this.statistics.getPerType().get(OsmPrimitiveType.WAY));
+
+        this.statistics.unmarkedAll();
+        assertCounter(3, 0, this.statistics.getAll());
+        assertCounter(2, 0, this.statistics.getPerLayer().get(this.layer1));
+        assertCounter(1, 0, this.statistics.getPerType().get(OsmPrimitiveType.WAY));
+    }
+
+    @Test
+    void testClear() {
+        this.statistics.added(this.node1, true);
+        this.statistics.added(this.way, false);
+
+        this.statistics.clear();
+        assertCounter(0, 0, this.statistics.getAll());
+        assertTrue(this.statistics.getPerLayer().isEmpty());
+        assertTrue(this.statistics.getPerType().isEmpty());
+    }
+}
@@ -0,0 +1,147 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Test class for {@link TodoPriorityQueue}
+ */
+@BasicPreferences
+class TodoPriorityQueueTest {
+    private final List<TodoListItem> items = new ArrayList<>();
+    private final Map<TodoListItem, Double> scores = new HashMap<>();
+
+    @BeforeEach
+    void setup() {
+        final var ds = new DataSet();
+        final var layer = new OsmDataLayer(ds, "TodoPriorityQueueTest", null);
+        for (var i = 0; i < 20; i++) {
+            final var node = new Node(i + 1, 1);
+            ds.addPrimitive(node);
+            final var item = new TodoListItem(layer, node);
+            this.items.add(item);
+            // Scores out of list order, with some ties
+            this.scores.put(item, (double) ((i * 7) % 20 / 2));
+        }
+    }
+
+    private TodoPriorityQueue queue() {
+        return TodoPriorityQueue.of(this.items, this.scores::get);
+    }
+
+    /**
+     * Take all items from the queue, in priority order
+     */
+    private static List<TodoListItem> drain(TodoPriorityQueue queue) {
+        final var drained = new ArrayList<TodoListItem>();
+        for (var item = queue.peek(); item != null; item = queue.peek()) {
+            drained.add(item);
+            queue.remove(item);
+        }
+        return drained;
+    }
+
+    private void assertScoreOrder(List<TodoListItem> drained) {
+        for (var i = 1; i < drained.size(); i++) {
+            assertFalse(this.scores.get(drained.get(i - 1)) < this.scores.get(drained.get(i)),
+                    "Higher scores come first at " + i);
+        }
+    }
+
+    @Test
+    void testOrder() {
+        final var queue = queue();
+        assertEquals(20, queue.size());
+        final var drained = drain(queue);
+        assertEquals(20, drained.size());
+        assertScoreOrder(drained);
+        assertNull(queue.peek());
+    }
+
+    @Test
+    void testRemoveFromMiddle() {
+        final var queue = queue();
+        for (var i = 0; i < this.items.size(); i += 3) {
+            queue.remove(this.items.get(i));
+        }
+        queue.remove(this.items.get(0));
+        assertEquals(13, queue.size(), "Removing an item twice does nothing");
+        final var drained = drain(queue);
+        assertEquals(13, drained.size());
+        assertScoreOrder(drained);
+        for (var i = 0; i < this.items.size(); i += 3) {
+            assertFalse(drained.contains(this.items.get(i)));
+        }
+    }
+
+    @Test
+    void testUpdate() {
+        final var queue = queue();
+        final var last = this.items.get(0);
+        this.scores.put(last, 100.0);
+        queue.update(last, 100.0);
+        assertEquals(last, queue.peek(), "A higher score moves the item up");
+
+        this.scores.put(last, -1.0);
+        queue.update(last, -1.0);
+        final var drained = drain(queue);
+        assertEquals(last, drained.get(drained.size() - 1), "A lower score moves the item down");
+        assertScoreOrder(drained);
+    }
+
+    @Test
+    void testAddExisting() {
+        final var queue = queue();
+        final var item = this.items.get(5);
+        this.scores.put(item, 100.0);
+        queue.add(item, 100.0);
+        assertEquals(20, queue.size(), "Adding an item that is in the queue rescores it");
+        assertEquals(item, queue.peek());
+    }
+
+    @Test
+    void testPass() {
+        final var queue = queue();
+        final var first = queue.peek();
+        queue.pass(first);
+        final var second = queue.peek();
+        assertNotEquals(first, second, "A passed item moves behind the other items");
+        queue.pass(second);
+
+        final var drained = drain(queue);
+        assertEquals(first, drained.get(18), "Passed items come last, in the order they were passed");
+        assertEquals(second, drained.get(19));
+        assertScoreOrder(drained.subList(0, 18));
+    }
+
+    @Test
+    void testPassRoundRobin() {
+        final var queue = queue();
+        final var order = new ArrayList<TodoListItem>();
+        for (var i = 0; i < 20; i++) {
+            order.add(queue.peek());
+            queue.pass(queue.peek());
+        }
+        assertEquals(20, order.stream().distinct().count(), "Passing goes round all items");
+        assertScoreOrder(order);
+        for (var i = 0; i < 20; i++) {
+            assertEquals(order.get(i), queue.peek(), "The second round has the same order");
+            queue.pass(queue.peek());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.DefaultListSelectionModel;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
+import org.openstreetmap.josm.data.osm.event.TagsChangedEvent;
+import org.openstreetmap.josm.data.validation.Severity;
+import org.openstreetmap.josm.data.validation.TestError;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * Test class for {@link TodoReverifyTask} and the tracking of changed done items in {@link TodoListCore}
+ */
+@BasicPreferences
+@Projection
+class TodoReverifyTaskTest {
+    private DataSet ds;
+    private TodoListModel model;
+    private Node fixme;
+    private Node plain;
+    private Node other;
+    private TodoListItem fixmeItem;
+    private TodoListItem plainItem;
+    private TodoListItem otherItem;
+    private TodoListItem wayItem;
+
+    /**
+     * A validator test that reports every node with a {@code fixme} tag
+     */
+    private static final class FixmeTest extends org.openstreetmap.josm.data.validation.Test {
+        FixmeTest() {
+            super("fixme");
+        }
+
+        @Override
+        public void visit(Node n) {
+            if (n.hasKey("fixme"))
+                errors.add(TestError.builder(this, Severity.WARNING, 1).message("fixme").primitives(n).build());
+        }
+    }
+
+    @BeforeEach
+    void setup() {
+        this.ds = new DataSet();
+        final var layer = new OsmDataLayer(this.ds, "TodoReverifyTaskTest", null);
+        this.fixme = new Node(new LatLon(50, 8));
+        this.plain = new Node(new LatLon(50.001, 8));
+        this.other = new Node(new LatLon(50.002, 8));
+        this.ds.addPrimitive(this.fixme);
+        this.ds.addPrimitive(this.plain);
+        this.ds.addPrimitive(this.other);
+        final var way = new Way();
+        way.setNodes(List.of(this.fixme, this.plain));
+        this.ds.addPrimitive(way);
+        this.fixmeItem = new TodoListItem(layer, this.fixme);
+        this.plainItem = new TodoListItem(layer, this.plain);
+        this.otherItem = new TodoListItem(layer, this.other);
+        this.wayItem = new TodoListItem(layer, way);
+        this.model = new TodoListModel(new DefaultListSelectionModel());
+        this.model.addItems(List.of(this.fixmeItem, this.plainItem, this.otherItem, this.wayItem));
+        this.model.markItems(List.of(this.fixmeItem, this.plainItem, this.wayItem));
+    }
+
+    @Test
+    void testPollChangedDone() {
+        final var notifications = new AtomicInteger();
+        this.model.addChangedDoneListener(notifications::incrementAndGet);
+
+        this.model.tagsChanged(new TagsChangedEvent(this.ds, this.fixme, Map.of()));
+        assertEquals(1, notifications.get());
+        // The way refers to the node, so it is changed too
+        assertEquals(Set.of(this.fixmeItem, this.wayItem), Set.copyOf(this.model.pollChangedDone()));
+        assertTrue(this.model.pollChangedDone().isEmpty(), "Polled items are forgotten");
+
+        this.model.tagsChanged(new TagsChangedEvent(this.ds, this.other, Map.of()));
+        assertEquals(1, notifications.get(), "Todo items are not tracked");
+        assertTrue(this.model.pollChangedDone().isEmpty());
+
+        this.model.nodeMoved(new NodeMovedEvent(this.ds, this.plain));
+        assertEquals(2, notifications.get());
+        this.model.addItems(List.of(this.plainItem));
+        assertEquals(List.of(this.wayItem), this.model.pollChangedDone(), "Items that are not done anymore are dropped");
+    }
+
+    @Test
+    void testReverify() throws Exception {
+        this.fixme.put("fixme", "check");
+        final var task = new TodoReverifyTask(this.model, new ArrayList<>(this.model.getDoneList()),
+                List.of(new FixmeTest()), NullProgressMonitor.INSTANCE);
+        task.realRun();
+        GuiHelper.runInEDTAndWait(() -> { /* Wait for the items to be moved */ });
+
+        assertEquals(List.of(this.otherItem, this.fixmeItem), this.model.getTodoList());
+        assertEquals(Set.of(this.plainItem, this.wayItem), Set.copyOf(this.model.getDoneList()));
+
+        this.model.undo();
+        assertEquals(List.of(this.otherItem), this.model.getTodoList(), "The items are moved back in one change");
+    }
+
+    @Test
+    void testReverifyChangedList() throws Exception {
+        this.fixme.put("fixme", "check");
+        final var task = new TodoReverifyTask(this.model, new ArrayList<>(this.model.getDoneList()),
+                List.of(new FixmeTest()), NullProgressMonitor.INSTANCE);
+        // The item is removed while the tests are running
+        this.model.removeItems(List.of(this.fixmeItem));
+        task.realRun();
+        GuiHelper.runInEDTAndWait(() -> { /* Wait for the items to be moved */ });
+
+        assertEquals(List.of(this.otherItem), this.model.getTodoList(), "Only items that are still done are moved back");
+        assertEquals(2, this.model.getDoneSize());
+    }
+}
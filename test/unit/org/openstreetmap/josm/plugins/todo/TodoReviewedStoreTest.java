@@ -0,0 +1,185 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * Test class for {@link TodoReviewedStore}
+ */
+class TodoReviewedStoreTest {
+    @TempDir
+    Path directory;
+    private Path file;
+    private TodoReviewedStore store;
+
+    @BeforeEach
+    void setup() {
+        this.file = this.directory.resolve("todo").resolve("reviewed.bin");
+        this.store = new TodoReviewedStore(this.file);
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.store.close();
+    }
+
+    private static List<Node> nodes(int from, int count) {
+        final var nodes = new ArrayList<Node>(count);
+        for (var i = 0; i < count; i++) {
+            nodes.add(new Node(from + i, 1));
+        }
+        return nodes;
+    }
+
+    @Test
+    void testAddContainsRemove() {
+        final var node = new Node(1, 3);
+        assertFalse(this.store.contains(node));
+        this.store.add(node);
+        assertTrue(this.store.contains(node));
+        assertEquals(1, this.store.size());
+
+        this.store.add(node);
+        assertEquals(1, this.store.size(), "Keys are only stored once");
+        assertFalse(this.store.contains(new Node(1, 4)), "Other versions were not reviewed");
+        assertFalse(this.store.contains(new Way(1, 3)), "Other types were not reviewed");
+
+        this.store.remove(node);
+        assertFalse(this.store.contains(node));
+        assertEquals(0, this.store.size());
+    }
+
+    @Test
+    void testNewObjectsAreNotStored() {
+        final var node = new Node();
+        this.store.add(node);
+        assertFalse(this.store.contains(node));
+        assertEquals(0, this.store.size());
+    }
+
+    @Test
+    void testTombstones() {
+        final var nodes = nodes(1, 5_000);
+        nodes.forEach(this.store::add);
+        for (var i = 0; i < nodes.size(); i += 2) {
+            this.store.remove(nodes.get(i));
+        }
+        assertEquals(2_500, this.store.size());
+        for (var i = 0; i < nodes.size(); i++) {
+            assertEquals(i % 2 == 1, this.store.contains(nodes.get(i)), "Removing keys keeps the other keys reachable");
+        }
+        // Removed keys can be added again
+        nodes.forEach(this.store::add);
+        assertEquals(5_000, this.store.size());
+        assertTrue(nodes.stream().allMatch(this.store::contains));
+    }
+
+    @Test
+    void testGrow() throws Exception {
+        this.store.add(new Node(1, 1));
+        final var initialSize = Files.size(this.file);
+        final var nodes = nodes(1, 100_000);
+        nodes.forEach(this.store::add);
+        assertEquals(100_000, this.store.size());
+        assertTrue(nodes.stream().allMatch(this.store::contains));
+        assertTrue(Files.size(this.file) > initialSize, "The file grows in place");
+    }
+
+    @Test
+    void testReserve() throws Exception {
+        this.store.add(new Node(1, 1));
+        this.store.reserve(100_000);
+        final var size = Files.size(this.file);
+        final var nodes = nodes(1, 100_000);
+        nodes.forEach(this.store::add);
+        assertEquals(100_000, this.store.size());
+        assertTrue(nodes.stream().allMatch(this.store::contains));
+        assertEquals(size, Files.size(this.file), "The table only grows before the batch");
+    }
+
+    @Test
+    void testRehashTombstones() throws Exception {
+        final var nodes = nodes(1, 32_000);
+        nodes.forEach(this.store::add);
+        final var size = Files.size(this.file);
+        nodes.subList(0, 31_900).forEach(this.store::remove);
+
+        // The tombstones fill the table, but there are few live keys
+        final var added = nodes(100_000, 30_000);
+        added.forEach(this.store::add);
+        assertEquals(30_100, this.store.size());
+        assertTrue(added.stream().allMatch(this.store::contains));
+        assertTrue(nodes.subList(31_900, 32_000).stream().allMatch(this.store::contains));
+        assertFalse(nodes.subList(0, 31_900).stream().anyMatch(this.store::contains));
+        assertEquals(size, Files.size(this.file), "The table is rehashed at the same size");
+    }
+
+    @Test
+    void testReopen() {
+        final var nodes = nodes(1, 40_000);
+        nodes.forEach(this.store::add);
+        this.store.remove(nodes.get(0));
+        this.store.close();
+
+        this.store = new TodoReviewedStore(this.file);
+        assertEquals(39_999, this.store.size());
+        assertFalse(this.store.contains(nodes.get(0)));
+        assertTrue(nodes.subList(1, nodes.size()).stream().allMatch(this.store::contains));
+    }
+
+    @Test
+    void testClear() {
+        final var nodes = nodes(1, 1_000);
+        nodes.forEach(this.store::add);
+        this.store.clear();
+        assertEquals(0, this.store.size());
+        assertFalse(nodes.stream().anyMatch(this.store::contains));
+        assertTrue(Files.exists(this.file), "The file is cleared in place");
+
+        this.store.add(nodes.get(0));
+        this.store.close();
+        this.store = new TodoReviewedStore(this.file);
+        assertEquals(1, this.store.size());
+        assertTrue(this.store.contains(nodes.get(0)));
+    }
+
+    @Test
+    void testInvalidFile() throws Exception {
+        Files.createDirectories(this.file.getParent());
+        Files.write(this.file, "not a todo list review store, but long enough".getBytes(StandardCharsets.UTF_8));
+        final var node = new Node(1, 1);
+        assertEquals(0, this.store.size());
+        this.store.add(node);
+        assertTrue(this.store.contains(node));
+    }
+
+    @Test
+    void testLocked() {
+        final var node = new Node(1, 1);
+        this.store.add(node);
+        try (var other = new TodoReviewedStore(this.file)) {
+            assertEquals(0, other.size(), "A store that is in use cannot be used again");
+            assertFalse(other.contains(node));
+            other.add(new Node(2, 1));
+            other.clear();
+        }
+        assertTrue(Files.exists(this.file), "A store that is in use is not deleted");
+        assertEquals(1, this.store.size());
+        assertTrue(this.store.contains(node));
+    }
+}
@@ -0,0 +1,94 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Test class for {@link TodoShards}
+ */
+@BasicPreferences
+class TodoShardsTest {
+    private DataSet ds;
+    private OsmDataLayer layer;
+
+    @BeforeEach
+    void setup() {
+        this.ds = new DataSet();
+        this.layer = new OsmDataLayer(this.ds, "TodoShardsTest", null);
+    }
+
+    private List<TodoListItem> items(int count) {
+        final var items = new ArrayList<TodoListItem>(count);
+        for (var i = 0; i < count; i++) {
+            final var node = new Node(this.ds.getNodes().size() + 1L, 1);
+            this.ds.addPrimitive(node);
+            items.add(new TodoListItem(this.layer, node));
+        }
+        return items;
+    }
+
+    private static void assertBalanced(List<List<TodoListItem>> shards, int count, int total) {
+        assertEquals(count, shards.size());
+        assertEquals(total, shards.stream().mapToInt(List::size).sum());
+        final var items = new HashSet<TodoListItem>();
+        shards.forEach(items::addAll);
+        assertEquals(total, items.size(), "Every item is in exactly one shard");
+        final var min = shards.stream().mapToInt(List::size).min().orElseThrow();
+        final var max = shards.stream().mapToInt(List::size).max().orElseThrow();
+        assertTrue(max - min <= 1, "The shard sizes differ by at most one: " + min + "-" + max);
+    }
+
+    @Test
+    void testBalance() {
+        final var items = items(20_003);
+        final var random = new Random(42);
+        final var positions = new ArrayList<EastNorth>(items.size());
+        for (var i = 0; i < items.size(); i++) {
+            // Every tenth item has no position, and the others are clustered in one corner
+            positions.add(i % 10 == 0 ? null : new EastNorth(Math.pow(random.nextDouble(), 4), random.nextDouble()));
+        }
+        for (var count : new int[] {1, 2, 7, 64}) {
+            assertBalanced(TodoShards.split(items, positions, count), count, items.size());
+        }
+    }
+
+    @Test
+    void testCompact() {
+        final var items = items(100);
+        final var positions = new ArrayList<EastNorth>();
+        for (var i = 0; i < items.size(); i++) {
+            positions.add(new EastNorth(i, 0));
+        }
+        final var shards = TodoShards.split(items, positions, 2);
+        assertEquals(new HashSet<>(items.subList(0, 50)), new HashSet<>(shards.get(0)), "The items are split along the line");
+        assertEquals(new HashSet<>(items.subList(50, 100)), new HashSet<>(shards.get(1)));
+    }
+
+    @Test
+    void testMoreShardsThanLocatedItems() {
+        final var items = items(4);
+        final var positions = new ArrayList<EastNorth>();
+        positions.add(new EastNorth(0, 0));
+        positions.add(null);
+        positions.add(new EastNorth(1, 1));
+        positions.add(new EastNorth(Double.NaN, 0));
+        assertBalanced(TodoShards.split(items, positions, 7), 7, 4);
+        assertBalanced(TodoShards.split(items, List.of(new EastNorth(0, 0), new EastNorth(0, 0), new EastNorth(0, 0),
+                new EastNorth(0, 0)), 3), 3, 4);
+        assertBalanced(TodoShards.split(List.of(), List.of(), 3), 3, 0);
+    }
+}
@@ -0,0 +1,272 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.todo;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import javax.swing.JOptionPane;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openstreetmap.josm.actions.JosmAction;
+import org.openstreetmap.josm.command.ChangePropertyCommand;
+import org.openstreetmap.josm.command.MoveCommand;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.UndoRedoHandler;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSource;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.event.DataSetListener;
+import org.openstreetmap.josm.data.osm.event.DatasetEventManager;
+import org.openstreetmap.josm.data.osm.event.DatasetEventManager.FireMode;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.testutils.annotations.Main;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * Replays a long scripted editing session against a large todo list, and checks the time spent in the event
+ * dispatch thread per operation and the memory retained afterwards.
+ * <p>
+ * The test only runs with {@code -Dtodo.soak=true}. The session and the budgets are set with system properties:
+ * <ul>
+ * <li>{@code todo.soak.nodes}: the number of nodes of the data set, every ten nodes also form a way</li>
+ * <li>{@code todo.soak.steps}: the number of edits and keystrokes</li>
+ * <li>{@code todo.soak.p99-millis}: the 99th percentile of the time of every kind of operation</li>
+ * <li>{@code todo.soak.heap-megabytes}: the heap retained after the session, compared to before it</li>
+ * </ul>
+ */
+@Main
+@Projection
+@EnabledIfSystemProperty(named = "todo.soak", matches = "true")
+class TodoSoakTest {
+    private static final int NODES = Integer.getInteger("todo.soak.nodes", 20_000);
+    private static final int STEPS = Integer.getInteger("todo.soak.steps", 5_000);
+    private static final long P99_MILLIS = Long.getLong("todo.soak.p99-millis", 50);
+    private static final long HEAP_MEGABYTES = Long.getLong("todo.soak.heap-megabytes", 64);
+    /** The number of steps between two layer merges or removals */
+    private static final int LAYER_INTERVAL = 500;
+    /** The number of objects of a layer that is merged or removed */
+    private static final int LAYER_SIZE = 1_000;
+
+    /** The durations of every kind of operation, in nanoseconds, only used in the EDT */
+    private final Map<String, List<Long>> latencies = new TreeMap<>();
+    private final Random random = new Random(42);
+    private TodoDialog dialog;
+    private TodoListModel model;
+    private DataSet ds;
+    private OsmDataLayer layer;
+    private List<Node> nodes;
+    /** The proxy that is registered for the data set events instead of the model */
+    private DataSetListener timed;
+
+    @BeforeEach
+    void setup() throws Exception {
+        this.dialog = TodoDialogTestUtils.createDialog();
+        this.model = TodoDialogTestUtils.readField(this.dialog, "model");
+        // Closing a layer with copies of the objects does not ask whether to move the items
+        Config.getPref().putBoolean("message.todo.remap-closed", false);
+        Config.getPref().putInt("message.todo.remap-closed.value", JOptionPane.NO_OPTION);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (this.timed != null)
+            DatasetEventManager.getInstance().removeDatasetListener(this.timed);
+        GuiHelper.runInEDTAndWait(() -> {
+            final var layerManager = MainApplication.getLayerManager();
+            new ArrayList<>(layerManager.getLayers()).forEach(layerManager::removeLayer);
+            UndoRedoHandler.getInstance().clean();
+        });
+        TodoDialogTestUtils.destroy(this.dialog);
+    }
+
+    @Test
+    void testSoak() throws Exception {
+        final JosmAction actPass = TodoDialogTestUtils.readField(this.dialog, "actPass");
+        final JosmAction actMark = TodoDialogTestUtils.readField(this.dialog, "actMark");
+        this.timed = timeDatasetCallbacks();
+
+        GuiHelper.runInEDTAndWait(() -> {
+            this.ds = createDataSet(NODES);
+            this.layer = new OsmDataLayer(this.ds, "TodoSoakTest", null);
+            MainApplication.getLayerManager().addLayer(this.layer);
+            this.nodes = new ArrayList<>(this.ds.getNodes());
+            time("addAll", () -> this.model.addItems(this.ds.allPrimitives().stream()
+                    .map(primitive -> new TodoListItem(this.layer, primitive)).toList()));
+            this.model.setSelected(Collections.singleton(this.model.getElementAt(0)));
+        });
+        final var baseline = usedHeap();
+
+        for (var step = 1; step <= STEPS; step++) {
+            final var current = step;
+            GuiHelper.runInEDTAndWait(() -> step(current, actPass, actMark));
+        }
+        // Wait for the consolidated data set events of the last steps
+        GuiHelper.runInEDTAndWait(() -> {
+            UndoRedoHandler.getInstance().clean();
+            this.model.getHistory().clear();
+        });
+        final var retained = usedHeap() - baseline;
+        report(retained);
+    }
+
+    /**
+     * Run one step of the session in the EDT
+     */
+    private void step(int step, JosmAction actPass, JosmAction actMark) {
+        if (step % LAYER_INTERVAL == 0) {
+            cycleLayer(step / LAYER_INTERVAL % 2 == 0);
+            return;
+        }
+        final var node = this.nodes.get(this.random.nextInt(this.nodes.size()));
+        final var operation = this.random.nextInt(100);
+        if (operation < 40) {
+            time("tagEdit", () -> UndoRedoHandler.getInstance().add(new ChangePropertyCommand(node, "note", "soak " + step)));
+        } else if (operation < 60) {
+            time("nodeMove", () -> UndoRedoHandler.getInstance().add(new MoveCommand(node, 1, 1)));
+        } else if (operation < 70) {
+            if (UndoRedoHandler.getInstance().hasUndoCommands())
+                time("dataUndo", () -> UndoRedoHandler.getInstance().undo());
+        } else if (operation < 85) {
+            time("pass", () -> actPass.actionPerformed(null));
+        } else if (operation < 95) {
+            time("mark", () -> actMark.actionPerformed(null));
+        } else {
+            time("todoUndo", () -> this.model.undo());
+        }
+    }
+
+    /**
+     * Add the items of a second layer, then merge the layer into the main layer or remove it
+     * @param merge {@code true} to merge the layer, {@code false} to remove it
+     */
+    private void cycleLayer(boolean merge) {
+        // A layer with copies of objects of the main layer, as if the same area was downloaded again
+        final var other = new DataSet();
+        final var start = this.random.nextInt(Math.max(1, this.nodes.size() - LAYER_SIZE));
+        for (var node : this.nodes.subList(start, Math.min(this.nodes.size(), start + LAYER_SIZE))) {
+            if (!node.isNew())
+                other.addPrimitive(new Node(node));
+        }
+        // Merging copies the data source, which tells a merge from closing the layer
+        other.addDataSource(new DataSource(new Bounds(0, 0, 1, 1), "TodoSoakTest"));
+        final var otherLayer = new OsmDataLayer(other, "TodoSoakTest " + start, null);
+        MainApplication.getLayerManager().addLayer(otherLayer);
+        time("addLayer", () -> this.model.addItems(other.allPrimitives().stream()
+                .map(primitive -> new TodoListItem(otherLayer, primitive)).toList()));
+        if (merge) {
+            this.layer.mergeFrom(otherLayer);
+            time("mergeLayer", () -> MainApplication.getLayerManager().removeLayer(otherLayer));
+        } else {
+            time("removeLayer", () -> MainApplication.getLayerManager().removeLayer(otherLayer));
+        }
+    }
+
+    /**
+     * Register the model for the data set events through a proxy that records the time of every callback
+     * @return The proxy
+     */
+    private DataSetListener timeDatasetCallbacks() {
+        final var listener = (DataSetListener) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {DataSetListener.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class)
+                        return method.invoke(this.model, args);
+                    final var start = System.nanoTime();
+                    try {
+                        return method.invoke(this.model, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        record("callback." + method.getName(), System.nanoTime() - start);
+                    }
+                });
+        DatasetEventManager.getInstance().removeDatasetListener(this.model);
+        DatasetEventManager.getInstance().addDatasetListener(listener, FireMode.IN_EDT_CONSOLIDATED);
+        return listener;
+    }
+
+    private void time(String operation, Runnable runnable) {
+        final var start = System.nanoTime();
+        runnable.run();
+        record(operation, System.nanoTime() - start);
+    }
+
+    private void record(String operation, long nanos) {
+        this.latencies.computeIfAbsent(operation, k -> new ArrayList<>()).add(nanos);
+    }
+
+    /**
+     * Log the latencies and check them and the retained heap against the budgets
+     * @param retained The retained heap in bytes
+     */
+    private void report(long retained) {
+        final var failures = new ArrayList<String>();
+        this.latencies.forEach((operation, values) -> {
+            final var sorted = values.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            final var p50 = sorted[(sorted.length - 1) / 2] / 1_000_000.0;
+            final var p99 = sorted[(int) Math.ceil(sorted.length * 0.99) - 1] / 1_000_000.0;
+            final var max = sorted[sorted.length - 1] / 1_000_000.0;
+            Logging.info(String.format("Todo soak %s: %d calls, p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    operation, sorted.length, p50, p99, max));
+            // Filling the list is a single large operation, not part of the editing budget
+            if (p99 > P99_MILLIS && !"addAll".equals(operation))
+                failures.add(String.format("%s p99 %.2f ms > %d ms", operation, p99, P99_MILLIS));
+        });
+        Logging.info(String.format("Todo soak retained heap: %.1f MB", retained / 1024.0 / 1024.0));
+        if (retained > HEAP_MEGABYTES * 1024 * 1024)
+            failures.add(String.format("retained heap %.1f MB > %d MB", retained / 1024.0 / 1024.0, HEAP_MEGABYTES));
+        assertTrue(failures.isEmpty(), String.join(", ", failures));
+    }
+
+    private static long usedHeap() {
+        final var runtime = Runtime.getRuntime();
+        for (var i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Create a data set of tagged nodes on a grid, where every ten nodes also form a way
+     * @param count The number of nodes
+     * @return The data set
+     */
+    private static DataSet createDataSet(int count) {
+        final var dataSet = new DataSet();
+        final var side = (int) Math.ceil(Math.sqrt(count));
+        final var wayNodes = new ArrayList<Node>(10);
+        for (var i = 0; i < count; i++) {
+            final var node = new Node(i + 1L, 1);
+            node.setCoor(new LatLon(50 + (i / side) * 1e-4, 8 + (i % side) * 1e-4));
+            node.put("amenity", i % 3 == 0 ? "bench" : "waste_basket");
+            dataSet.addPrimitive(node);
+            wayNodes.add(node);
+            if (wayNodes.size() == 10) {
+                final var way = new Way(i / 10 + 1L, 1);
+                way.setNodes(wayNodes);
+                way.put("highway", "footway");
+                dataSet.addPrimitive(way);
+                wayNodes.clear();
+            }
+        }
+        return dataSet;
+    }
+}